@@ -0,0 +1,269 @@
+package com.example.findit;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * BitmapLoader decodes images from a Uri at the size they are needed at.
+ * It reads the image bounds first, decodes with an inSampleSize so the full-resolution image is never
+ * held in memory, scales the result down to the requested size and applies the EXIF orientation.
+ * Decoding and transforming draw their bitmaps from the BitmapPool, so callers done with a result should release it there.
+ * All methods block and must be called from a background thread.
+ */
+public final class BitmapLoader
+{
+    public static final int LABELER_INPUT_SIZE = 640; // Longest edge of the bitmap handed to the image labeler
+    private static final Paint FILTER_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG); // Bilinear filtering, only read while drawing
+
+    private BitmapLoader()
+    {
+    }
+
+    /**
+     * Decodes the image behind the given Uri so that it fits within the requested size.
+     * The aspect ratio is kept, and images smaller than the requested size are not scaled up.
+     *
+     * @param context   The context used to resolve the Uri
+     * @param uri       The Uri of the image
+     * @param reqWidth  The maximum width of the decoded bitmap
+     * @param reqHeight The maximum height of the decoded bitmap
+     * @return The decoded, oriented bitmap
+     * @throws IOException If the image cannot be opened or decoded
+     */
+    public static Bitmap decodeSampled(Context context, Uri uri, int reqWidth, int reqHeight) throws IOException
+    {
+        int orientation = readOrientation(context, uri);
+        boolean swapped = swapsDimensions(orientation);
+
+        // The requested size applies to the displayed image, so swap it for images stored sideways
+        int targetWidth = swapped ? reqHeight : reqWidth;
+        int targetHeight = swapped ? reqWidth : reqHeight;
+
+        BitmapFactory.Options options = readBounds(context, uri);
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+
+        // Decode into a pooled bitmap of the expected size when one is available
+        int sampledWidth = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        int sampledHeight = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        options.inBitmap = BitmapPool.poll(sampledWidth, sampledHeight, Bitmap.Config.ARGB_8888);
+
+        Bitmap bitmap;
+        try
+        {
+            bitmap = decode(context, uri, options);
+        }
+
+        catch (IllegalArgumentException e)
+        {
+            // The pooled bitmap cannot hold this image, decode into a new one
+            BitmapPool.release(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = decode(context, uri, options);
+        }
+
+        if (bitmap == null)
+        {
+            BitmapPool.release(options.inBitmap);
+            throw new IOException("Failed to decode image: " + uri);
+        }
+
+        return transform(bitmap, targetWidth, targetHeight, orientation);
+    }
+
+    /**
+     * Reads the size and MIME type of the image behind the given Uri without decoding its pixels.
+     *
+     * @param context The context used to resolve the Uri
+     * @param uri     The Uri of the image
+     * @return Options holding outWidth, outHeight and outMimeType of the image
+     * @throws IOException If the image cannot be opened or is not a decodable image
+     */
+    public static BitmapFactory.Options readBounds(Context context, Uri uri) throws IOException
+    {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = openStream(context, uri))
+        {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            throw new IOException("Failed to read image bounds: " + uri);
+
+        return options;
+    }
+
+    /**
+     * Decodes the image behind the given Uri with the given options.
+     *
+     * @param context The context used to resolve the Uri
+     * @param uri     The Uri of the image
+     * @param options The decoding options
+     * @return The decoded bitmap, or null if the image could not be decoded
+     * @throws IOException If the image cannot be opened
+     */
+    private static Bitmap decode(Context context, Uri uri, BitmapFactory.Options options) throws IOException
+    {
+        try (InputStream in = openStream(context, uri))
+        {
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
+
+    /**
+     * Calculates the largest power-of-two sample size that keeps the decoded image
+     * at least as large as the requested size.
+     *
+     * @param width     The width of the source image
+     * @param height    The height of the source image
+     * @param reqWidth  The requested width
+     * @param reqHeight The requested height
+     * @return The sample size to decode with
+     */
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight)
+    {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= reqWidth && height / (inSampleSize * 2) >= reqHeight)
+            inSampleSize *= 2;
+
+        return inSampleSize;
+    }
+
+    /**
+     * Scales the bitmap down to fit the requested size and rotates or flips it according to its EXIF orientation.
+     * The result is drawn into a pooled bitmap, and the source is released to the pool when a new one is used.
+     *
+     * @param source      The sampled bitmap
+     * @param maxWidth    The maximum width before orientation is applied
+     * @param maxHeight   The maximum height before orientation is applied
+     * @param orientation The EXIF orientation of the image
+     * @return The transformed bitmap, or the source itself if nothing had to change
+     */
+    private static Bitmap transform(Bitmap source, int maxWidth, int maxHeight, int orientation)
+    {
+        Matrix matrix = new Matrix();
+
+        float scale = Math.min((float) maxWidth / source.getWidth(), (float) maxHeight / source.getHeight());
+        if (scale < 1f)
+            matrix.postScale(scale, scale);
+
+        switch (orientation)
+        {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.postRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.postScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.postRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.postRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.postRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.postRotate(-90);
+                break;
+            default:
+                break;
+        }
+
+        if (matrix.isIdentity())
+            return source;
+
+        // Move the transformed image back to the origin of the result
+        RectF bounds = new RectF(0, 0, source.getWidth(), source.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+
+        Bitmap result = BitmapPool.acquire(Math.round(bounds.width()), Math.round(bounds.height()), Bitmap.Config.ARGB_8888);
+        new Canvas(result).drawBitmap(source, matrix, FILTER_PAINT);
+        BitmapPool.release(source);
+
+        return result;
+    }
+
+    /**
+     * Checks whether the image behind the given Uri is stored sideways,
+     * so that its displayed width and height are its stored height and width.
+     *
+     * @param context The context used to resolve the Uri
+     * @param uri     The Uri of the image
+     * @return true if the EXIF orientation rotates the image by a quarter turn, false otherwise
+     */
+    public static boolean isStoredSideways(Context context, Uri uri)
+    {
+        return swapsDimensions(readOrientation(context, uri));
+    }
+
+    /**
+     * Checks whether an EXIF orientation rotates the image by a quarter turn.
+     *
+     * @param orientation The EXIF orientation
+     * @return true if the orientation swaps width and height, false otherwise
+     */
+    private static boolean swapsDimensions(int orientation)
+    {
+        return orientation == ExifInterface.ORIENTATION_ROTATE_90
+                || orientation == ExifInterface.ORIENTATION_ROTATE_270
+                || orientation == ExifInterface.ORIENTATION_TRANSPOSE
+                || orientation == ExifInterface.ORIENTATION_TRANSVERSE;
+    }
+
+    /**
+     * Reads the EXIF orientation of the image behind the given Uri.
+     *
+     * @param context The context used to resolve the Uri
+     * @param uri     The Uri of the image
+     * @return The EXIF orientation, or ORIENTATION_NORMAL if it cannot be read
+     */
+    private static int readOrientation(Context context, Uri uri)
+    {
+        try (InputStream in = openStream(context, uri))
+        {
+            return new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        }
+
+        catch (IOException e)
+        {
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Opens an input stream for the given Uri.
+     *
+     * @param context The context used to resolve the Uri
+     * @param uri     The Uri of the image
+     * @return The opened stream
+     * @throws IOException If the Uri cannot be opened
+     */
+    private static InputStream openStream(Context context, Uri uri) throws IOException
+    {
+        InputStream in = context.getContentResolver().openInputStream(uri);
+        if (in == null)
+            throw new IOException("Failed to open image: " + uri);
+
+        return in;
+    }
+}
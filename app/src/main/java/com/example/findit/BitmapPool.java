@@ -0,0 +1,120 @@
+package com.example.findit;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BitmapPool keeps released bitmaps keyed by their size and config, so the labeling pipeline can reuse them
+ * for decoding and preprocessing instead of allocating large bitmaps for every search.
+ * The pooled bitmaps are bounded by a byte budget, bitmaps beyond it are recycled.
+ * A bitmap taken from the pool belongs to the caller until it is released again, and must not be used after that.
+ * All methods are thread-safe.
+ */
+public final class BitmapPool
+{
+    private static final long MAX_POOL_BYTES = Math.min(Runtime.getRuntime().maxMemory() / 8, 24L * 1024 * 1024); // Byte budget of the pooled bitmaps
+
+    private static final Map<String, ArrayDeque<Bitmap>> pool = new HashMap<>(); // Released bitmaps by size and config
+    private static long pooledBytes; // Bytes held by the pooled bitmaps
+
+    private BitmapPool()
+    {
+    }
+
+    /**
+     * Returns a mutable bitmap of the given size and config, taken from the pool or newly allocated.
+     * Pooled bitmaps are cleared to transparent before they are returned.
+     *
+     * @param width  The width of the bitmap
+     * @param height The height of the bitmap
+     * @param config The config of the bitmap
+     * @return The bitmap, owned by the caller until it is released
+     */
+    public static Bitmap acquire(int width, int height, Bitmap.Config config)
+    {
+        Bitmap bitmap = poll(width, height, config);
+        if (bitmap == null)
+            return Bitmap.createBitmap(width, height, config);
+
+        bitmap.eraseColor(0);
+        return bitmap;
+    }
+
+    /**
+     * Takes a bitmap of the given size and config from the pool without allocating one, e.g. to decode into.
+     * Its pixels are left as they were.
+     *
+     * @param width  The width of the bitmap
+     * @param height The height of the bitmap
+     * @param config The config of the bitmap
+     * @return The pooled bitmap, or null if none is pooled
+     */
+    public static synchronized Bitmap poll(int width, int height, Bitmap.Config config)
+    {
+        ArrayDeque<Bitmap> bitmaps = pool.get(keyOf(width, height, config));
+        if (bitmaps == null || bitmaps.isEmpty())
+            return null;
+
+        Bitmap bitmap = bitmaps.pop();
+        pooledBytes -= bitmap.getAllocationByteCount();
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap to the pool, or recycles it if it cannot be reused or the pool is full.
+     *
+     * @param bitmap The bitmap to release, may be null
+     */
+    public static synchronized void release(Bitmap bitmap)
+    {
+        if (bitmap == null || bitmap.isRecycled())
+            return;
+
+        int bytes = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || bitmap.getConfig() == null || pooledBytes + bytes > MAX_POOL_BYTES)
+        {
+            bitmap.recycle();
+            return;
+        }
+
+        String key = keyOf(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bitmaps = pool.get(key);
+        if (bitmaps == null)
+        {
+            bitmaps = new ArrayDeque<>();
+            pool.put(key, bitmaps);
+        }
+
+        bitmaps.push(bitmap);
+        pooledBytes += bytes;
+    }
+
+    /**
+     * Recycles every pooled bitmap, e.g. when the system is low on memory.
+     */
+    public static synchronized void clear()
+    {
+        for (ArrayDeque<Bitmap> bitmaps : pool.values())
+            for (Bitmap bitmap : bitmaps)
+                bitmap.recycle();
+
+        pool.clear();
+        pooledBytes = 0;
+    }
+
+    /**
+     * Returns the pool key of a bitmap size and config.
+     *
+     * @param width  The width of the bitmap
+     * @param height The height of the bitmap
+     * @param config The config of the bitmap
+     * @return The key
+     */
+    private static String keyOf(int width, int height, Bitmap.Config config)
+    {
+        return width + "x" + height + ":" + config;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.findit;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+/**
+ * CaptureJob represents one queued search: an image waiting to be labeled, located and uploaded.
+ * Jobs are persisted by CaptureJobStore, and the stage records the last checkpoint the job reached,
+ * so a job interrupted by process death resumes where it left off.
+ * Each job carries its own state while it runs, so several jobs can be processed concurrently.
+ */
+public class CaptureJob
+{
+    public static final int STAGE_QUEUED = 0; // The image was queued but not yet labeled
+    public static final int STAGE_LABELED = 1; // The labels were found and saved
+    public static final int STAGE_LOCATED = 2; // The location was found and saved
+    public static final int STAGE_UPLOADED = 3; // The image was uploaded to Firebase Storage
+    public static final int STAGE_INDEXED = 4; // The capture record was written to Firestore, the job is done
+
+    private final long id;
+    private final Uri imageUri;
+    private final long createdAt; // Time in milliseconds the image was queued, used as the capture time
+    private int stage;
+    private String label;
+    private String labels; // Top labels with their confidences in the compact form of LabelResult.encode()
+    private String location;
+    private String regions; // Objects found in detection mode, as the JSON array of LabeledRegion.encode(), or null
+    private int attempts;
+    private long nextAttemptAt;
+    private String storagePath; // Path of the uploaded image, fixed before the first upload attempt so retries overwrite it
+    private int width; // Width of the uploaded image
+    private int height; // Height of the uploaded image
+    private Bitmap imageBitmap; // Decoded labeler input, only held in memory while the job runs
+
+    /**
+     * Constructor for CaptureJob.
+     *
+     * @param id            The row ID of the job in the CaptureJobStore
+     * @param imageUri      The Uri of the image to process
+     * @param createdAt     The time in milliseconds the image was queued
+     * @param stage         The last stage the job reached
+     * @param label         The label found for the image, or null if not labeled yet
+     * @param location      The location found for the image, or null if not located yet
+     * @param attempts      The number of failed attempts so far
+     * @param nextAttemptAt The time in milliseconds before which the job must not be retried
+     */
+    public CaptureJob(long id, Uri imageUri, long createdAt, int stage, String label, String location, int attempts, long nextAttemptAt)
+    {
+        this.id = id;
+        this.imageUri = imageUri;
+        this.createdAt = createdAt;
+        this.stage = stage;
+        this.label = label;
+        this.location = location;
+        this.attempts = attempts;
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public Uri getImageUri()
+    {
+        return imageUri;
+    }
+
+    public long getCreatedAt()
+    {
+        return createdAt;
+    }
+
+    public int getStage()
+    {
+        return stage;
+    }
+
+    public void setStage(int stage)
+    {
+        this.stage = stage;
+    }
+
+    public String getLabel()
+    {
+        return label;
+    }
+
+    public void setLabel(String label)
+    {
+        this.label = label;
+    }
+
+    public String getLabels()
+    {
+        return labels;
+    }
+
+    public void setLabels(String labels)
+    {
+        this.labels = labels;
+    }
+
+    public String getRegions()
+    {
+        return regions;
+    }
+
+    public void setRegions(String regions)
+    {
+        this.regions = regions;
+    }
+
+    public String getLocation()
+    {
+        return location;
+    }
+
+    public void setLocation(String location)
+    {
+        this.location = location;
+    }
+
+    public int getAttempts()
+    {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts)
+    {
+        this.attempts = attempts;
+    }
+
+    public long getNextAttemptAt()
+    {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(long nextAttemptAt)
+    {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getStoragePath()
+    {
+        return storagePath;
+    }
+
+    public void setStoragePath(String storagePath)
+    {
+        this.storagePath = storagePath;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public void setWidth(int width)
+    {
+        this.width = width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public void setHeight(int height)
+    {
+        this.height = height;
+    }
+
+    public Bitmap getImageBitmap()
+    {
+        return imageBitmap;
+    }
+
+    public void setImageBitmap(Bitmap imageBitmap)
+    {
+        this.imageBitmap = imageBitmap;
+    }
+
+    /**
+     * Returns the decoded image of this job to the BitmapPool, if it holds one.
+     */
+    public void releaseImageBitmap()
+    {
+        if (imageBitmap != null)
+        {
+            BitmapPool.release(imageBitmap);
+            imageBitmap = null;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.findit;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CaptureJobStore persists queued searches in a local SQLite table,
+ * so label-and-upload work survives the service or the app process being killed.
+ */
+public class CaptureJobStore extends SQLiteOpenHelper
+{
+    private static final String DATABASE_NAME = "capture_jobs.db"; // Database file name
+    private static final int DATABASE_VERSION = 1; // Database schema version
+
+    private static final String TABLE_JOBS = "capture_jobs";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_IMAGE_URI = "image_uri";
+    private static final String COLUMN_STAGE = "stage";
+    private static final String COLUMN_LABEL = "label";
+    private static final String COLUMN_LABELS = "labels";
+    private static final String COLUMN_REGIONS = "regions";
+    private static final String COLUMN_LOCATION = "location";
+    private static final String COLUMN_ATTEMPTS = "attempts";
+    private static final String COLUMN_NEXT_ATTEMPT_AT = "next_attempt_at";
+    private static final String COLUMN_CREATED_AT = "created_at";
+    private static final String COLUMN_STORAGE_PATH = "storage_path";
+    private static final String COLUMN_WIDTH = "width";
+    private static final String COLUMN_HEIGHT = "height";
+
+    /**
+     * Constructor for CaptureJobStore.
+     *
+     * @param context The context used to open the database
+     */
+    public CaptureJobStore(Context context)
+    {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db)
+    {
+        db.execSQL("CREATE TABLE " + TABLE_JOBS + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_IMAGE_URI + " TEXT NOT NULL, "
+                + COLUMN_STAGE + " INTEGER NOT NULL, "
+                + COLUMN_LABEL + " TEXT, "
+                + COLUMN_LABELS + " TEXT, "
+                + COLUMN_REGIONS + " TEXT, "
+                + COLUMN_LOCATION + " TEXT, "
+                + COLUMN_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_NEXT_ATTEMPT_AT + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_CREATED_AT + " INTEGER NOT NULL, "
+                + COLUMN_STORAGE_PATH + " TEXT, "
+                + COLUMN_WIDTH + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_HEIGHT + " INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
+    {
+        // Version 1 is the only schema so far. Later versions add columns in place, so queued jobs are not lost
+    }
+
+    /**
+     * Queues a new job for the given image.
+     *
+     * @param imageUri The Uri of the image to process
+     * @return The queued job
+     */
+    public synchronized CaptureJob insert(Uri imageUri)
+    {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_IMAGE_URI, imageUri.toString());
+        long createdAt = System.currentTimeMillis();
+        values.put(COLUMN_STAGE, CaptureJob.STAGE_QUEUED);
+        values.put(COLUMN_CREATED_AT, createdAt);
+
+        long id = getWritableDatabase().insert(TABLE_JOBS, null, values);
+        return new CaptureJob(id, imageUri, createdAt, CaptureJob.STAGE_QUEUED, null, null, 0, 0);
+    }
+
+    /**
+     * Loads all jobs that have not finished yet, oldest first.
+     *
+     * @return The pending jobs
+     */
+    public synchronized List<CaptureJob> loadPending()
+    {
+        List<CaptureJob> jobs = new ArrayList<>();
+
+        try (Cursor cursor = getReadableDatabase().query(TABLE_JOBS, null,
+                COLUMN_STAGE + " < ?", new String[]{String.valueOf(CaptureJob.STAGE_INDEXED)},
+                null, null, COLUMN_CREATED_AT + " ASC"))
+        {
+            while (cursor.moveToNext())
+            {
+                CaptureJob job = new CaptureJob(
+                        cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID)),
+                        Uri.parse(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_IMAGE_URI))),
+                        cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_CREATED_AT)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_STAGE)),
+                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LABEL)),
+                        cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LOCATION)),
+                        cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ATTEMPTS)),
+                        cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_NEXT_ATTEMPT_AT)));
+                job.setLabels(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LABELS)));
+                job.setRegions(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_REGIONS)));
+                job.setStoragePath(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_STORAGE_PATH)));
+                job.setWidth(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_WIDTH)));
+                job.setHeight(cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HEIGHT)));
+                jobs.add(job);
+            }
+        }
+
+        return jobs;
+    }
+
+    /**
+     * Saves the stage the job reached together with its labels, location and upload details.
+     *
+     * @param job The job to checkpoint
+     */
+    public synchronized void checkpoint(CaptureJob job)
+    {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_STAGE, job.getStage());
+        values.put(COLUMN_LABEL, job.getLabel());
+        values.put(COLUMN_LABELS, job.getLabels());
+        values.put(COLUMN_REGIONS, job.getRegions());
+        values.put(COLUMN_LOCATION, job.getLocation());
+        values.put(COLUMN_STORAGE_PATH, job.getStoragePath());
+        values.put(COLUMN_WIDTH, job.getWidth());
+        values.put(COLUMN_HEIGHT, job.getHeight());
+
+        getWritableDatabase().update(TABLE_JOBS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(job.getId())});
+    }
+
+    /**
+     * Saves the retry state of a job after a failed attempt.
+     *
+     * @param job The job that failed
+     */
+    public synchronized void recordFailure(CaptureJob job)
+    {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ATTEMPTS, job.getAttempts());
+        values.put(COLUMN_NEXT_ATTEMPT_AT, job.getNextAttemptAt());
+
+        getWritableDatabase().update(TABLE_JOBS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(job.getId())});
+    }
+
+    /**
+     * Removes a finished or abandoned job from the queue.
+     *
+     * @param job The job to remove
+     */
+    public synchronized void delete(CaptureJob job)
+    {
+        getWritableDatabase().delete(TABLE_JOBS, COLUMN_ID + " = ?", new String[]{String.valueOf(job.getId())});
+    }
+}
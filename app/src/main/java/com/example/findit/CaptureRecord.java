@@ -0,0 +1,231 @@
+package com.example.findit;
+
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ServerTimestamp;
+
+import java.util.Date;
+
+/**
+ * CaptureRecord is the Firestore index entry of one uploaded search.
+ * Records are stored under Users/{email}/Captures, one document per uploaded image,
+ * so the history can be read with a single ordered query instead of listing Firebase Storage.
+ * Deleted captures are kept as tombstones, and every change stamps updatedAt with the server time,
+ * so devices can sync the index incrementally.
+ */
+public class CaptureRecord
+{
+    public static final String FIELD_TIMESTAMP = "timestamp"; // Name of the field holding the capture time
+    public static final String FIELD_UPDATED_AT = "updatedAt"; // Name of the field holding the server time of the last change
+    public static final String FIELD_DELETED = "deleted"; // Name of the field marking a tombstone
+    public static final String THUMBNAIL_DIR = "thumbs"; // Storage folder, next to the originals, holding the thumbnails
+
+    private String label, location, storagePath, url, thumbnailUrl;
+    private String labels; // Top labels with their confidences in the compact form of LabelResult.encode(), e.g. "Dog:0.93;Cat:0.41"
+    private String regions; // Objects found in detection mode, as the JSON array of LabeledRegion.encode(), or null
+    private String generation; // Storage generation of the uploaded image, changes whenever the file is overwritten
+    private String thumbnailGeneration; // Storage generation of the thumbnail, which is uploaded separately from the image
+    private long timestamp;
+    private int width, height;
+    private boolean deleted;
+    @ServerTimestamp
+    private Date updatedAt; // Filled in by the server when the record is written
+
+    /**
+     * Default constructor for CaptureRecord, required by Firestore.
+     */
+    public CaptureRecord()
+    {
+    }
+
+    /**
+     * Constructor for CaptureRecord.
+     *
+     * @param label       The best label found in the image
+     * @param location    The location the image was searched at
+     * @param timestamp   The upload time in milliseconds
+     * @param storagePath The path of the image in Firebase Storage
+     * @param url         The download URL of the image
+     * @param width       The width of the uploaded image
+     * @param height      The height of the uploaded image
+     */
+    public CaptureRecord(String label, String location, long timestamp, String storagePath, String url, int width, int height)
+    {
+        this.label = label;
+        this.location = location;
+        this.timestamp = timestamp;
+        this.storagePath = storagePath;
+        this.url = url;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Returns the Firestore collection holding the capture records of a user.
+     *
+     * @param email The email of the user
+     * @return The user's capture collection
+     */
+    public static CollectionReference collection(String email)
+    {
+        return FirebaseFirestore.getInstance().collection("Users").document(email).collection("Captures");
+    }
+
+    public String getLabel()
+    {
+        return label;
+    }
+
+    public void setLabel(String label)
+    {
+        this.label = label;
+    }
+
+    public String getLabels()
+    {
+        return labels;
+    }
+
+    public void setLabels(String labels)
+    {
+        this.labels = labels;
+    }
+
+    public String getRegions()
+    {
+        return regions;
+    }
+
+    public void setRegions(String regions)
+    {
+        this.regions = regions;
+    }
+
+    public String getLocation()
+    {
+        return location;
+    }
+
+    public void setLocation(String location)
+    {
+        this.location = location;
+    }
+
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp)
+    {
+        this.timestamp = timestamp;
+    }
+
+    public String getStoragePath()
+    {
+        return storagePath;
+    }
+
+    public void setStoragePath(String storagePath)
+    {
+        this.storagePath = storagePath;
+    }
+
+    /**
+     * Returns the Storage path of the thumbnail of an uploaded image.
+     * Thumbnails are JPEG files in the thumbs folder next to the original, named after it.
+     *
+     * @param storagePath The path of the original image
+     * @return The path of its thumbnail
+     */
+    public static String thumbnailPathOf(String storagePath)
+    {
+        int slash = storagePath.lastIndexOf('/');
+        String name = storagePath.substring(slash + 1);
+        int dot = name.lastIndexOf('.');
+        if (dot > 0)
+            name = name.substring(0, dot);
+
+        return storagePath.substring(0, slash + 1) + THUMBNAIL_DIR + "/" + name + ".jpg";
+    }
+
+    public String getUrl()
+    {
+        return url;
+    }
+
+    public void setUrl(String url)
+    {
+        this.url = url;
+    }
+
+    public String getThumbnailUrl()
+    {
+        return thumbnailUrl;
+    }
+
+    public void setThumbnailUrl(String thumbnailUrl)
+    {
+        this.thumbnailUrl = thumbnailUrl;
+    }
+
+    public String getGeneration()
+    {
+        return generation;
+    }
+
+    public void setGeneration(String generation)
+    {
+        this.generation = generation;
+    }
+
+    public String getThumbnailGeneration()
+    {
+        return thumbnailGeneration;
+    }
+
+    public void setThumbnailGeneration(String thumbnailGeneration)
+    {
+        this.thumbnailGeneration = thumbnailGeneration;
+    }
+
+    public int getWidth()
+    {
+        return width;
+    }
+
+    public void setWidth(int width)
+    {
+        this.width = width;
+    }
+
+    public int getHeight()
+    {
+        return height;
+    }
+
+    public void setHeight(int height)
+    {
+        this.height = height;
+    }
+
+    public boolean isDeleted()
+    {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted)
+    {
+        this.deleted = deleted;
+    }
+
+    public Date getUpdatedAt()
+    {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt)
+    {
+        this.updatedAt = updatedAt;
+    }
+}
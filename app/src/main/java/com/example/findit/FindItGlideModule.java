@@ -0,0 +1,54 @@
+package com.example.findit;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.AppGlideModule;
+import com.bumptech.glide.request.RequestOptions;
+
+/**
+ * FindItGlideModule configures the Glide instance shared by the app.
+ * The memory caches get explicit budgets, and the disk cache keeps the sized images that are shown,
+ * so history rows and the full screen view are served locally after the first load.
+ */
+@GlideModule
+public final class FindItGlideModule extends AppGlideModule
+{
+    private static final int MEMORY_CACHE_SCREENS = 2; // Screens of images kept in the memory cache
+    private static final int BITMAP_POOL_SCREENS = 3; // Screens of bitmaps kept in the pool for reuse
+    private static final long DISK_CACHE_BYTES = 200L * 1024 * 1024; // Budget of the disk cache
+    private static final String DISK_CACHE_DIR = "glide_images"; // Cache sub-directory holding the disk cache
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder)
+    {
+        MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context)
+                .setMemoryCacheScreens(MEMORY_CACHE_SCREENS)
+                .setBitmapPoolScreens(BITMAP_POOL_SCREENS)
+                .build();
+
+        builder.setMemoryCache(new LruResourceCache(calculator.getMemoryCacheSize()));
+        builder.setBitmapPool(new LruBitmapPool(calculator.getBitmapPoolSize()));
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, DISK_CACHE_DIR, DISK_CACHE_BYTES));
+
+        // Captures are photos, so keep only the resized results on disk, the originals are already in Firebase Storage
+        builder.setDefaultRequestOptions(new RequestOptions()
+                .format(DecodeFormat.PREFER_RGB_565)
+                .diskCacheStrategy(DiskCacheStrategy.RESOURCE));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled()
+    {
+        return false;
+    }
+}
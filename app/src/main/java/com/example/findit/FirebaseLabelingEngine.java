@@ -0,0 +1,76 @@
+package com.example.findit;
+
+import android.graphics.Bitmap;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.ml.vision.label.FirebaseVisionImageLabel;
+import com.google.firebase.ml.vision.label.FirebaseVisionImageLabeler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FirebaseLabelingEngine runs the on-device Firebase ML Vision image labeler shared by ImageLabelerProvider.
+ * Images are center-cropped to the model's input size before they are handed over,
+ * so the labeler does not scale a large bitmap on every call. Images already of that size are handed over as they are.
+ */
+public class FirebaseLabelingEngine implements LabelingEngine
+{
+    public static final String NAME = "FIREBASE"; // Name of the engine in the preferences
+    private static final int INPUT_SIZE = 224; // Input size of the on-device image labeling model
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public int getInputWidth()
+    {
+        return INPUT_SIZE;
+    }
+
+    @Override
+    public int getInputHeight()
+    {
+        return INPUT_SIZE;
+    }
+
+    @Override
+    public List<LabelResult> label(Bitmap bitmap) throws Exception
+    {
+        Bitmap input = ImagePreprocessor.toInput(bitmap, INPUT_SIZE, INPUT_SIZE);
+        FirebaseVisionImageLabeler labeler = ImageLabelerProvider.acquire();
+        List<FirebaseVisionImageLabel> firebaseVisionImageLabels;
+        try
+        {
+            firebaseVisionImageLabels = Tasks.await(labeler.processImage(FirebaseVisionImage.fromBitmap(input)));
+        }
+
+        finally
+        {
+            ImageLabelerProvider.release(labeler);
+            ImagePreprocessor.releaseInput(input, bitmap);
+        }
+
+        List<LabelResult> results = new ArrayList<>(firebaseVisionImageLabels.size());
+        for (FirebaseVisionImageLabel label : firebaseVisionImageLabels)
+            results.add(new LabelResult(label.getText(), label.getConfidence()));
+
+        return results;
+    }
+
+    @Override
+    public void warmUp()
+    {
+        ImageLabelerProvider.warmUp();
+    }
+
+    @Override
+    public void close()
+    {
+        ImageLabelerProvider.retire();
+    }
+}
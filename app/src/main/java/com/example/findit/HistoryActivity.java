@@ -1,39 +1,64 @@
 package com.example.findit;
 
 import android.content.Intent;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.Button;
-import android.widget.ImageView;
-import android.widget.ListView;
+import android.widget.EditText;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.CustomTarget;
+import com.bumptech.glide.request.transition.Transition;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class HistoryActivity extends AppCompatActivity implements View.OnClickListener
 {
     // UI elements
     private Button btnReturn;
-    private ListView listView;
+    private EditText txtSearch;
+    private RecyclerView recyclerView;
     private List<ImageData> imageDataList;
     private ImageAdapter imageAdapter;
-    private ImageView fullImageView;
+    private HistoryPrefetcher prefetcher; // Loads pages, thumbnails and originals ahead of the scroll position
+    private TiledImageView fullImageView;
+    private static final int PAGE_SIZE = 20; // Number of capture records loaded per page
+    private static final long SUBMIT_DELAY_MILLIS = 100; // Window in which list changes are coalesced into one submission
+    private static final long SEARCH_DELAY_MILLIS = 300; // Typing pause after which the search is run
+    private boolean isLoadingPage; // Whether a page is being loaded
+    private boolean submitPending; // Whether a list submission is scheduled
+    private boolean hasMorePages = true; // Whether the local store may hold more records than are shown
+    private CaptureRecord lastRecord; // The last record shown, where the next page continues, or null if none is shown
+    private HistoryQuery activeQuery; // The search the list is filtered by, or null to show the whole history
+    private int queryVersion; // Incremented on every new search, so pages loaded for an older search are dropped
+    private final Runnable searchRunnable = this::applySearch; // Runs the search once the user stops typing
+    private CustomTarget<File> fullImageTarget; // Download of the original shown in full screen, or null
+    private String userEmail; // Email of the logged-in user
+    private HistoryStore historyStore; // Local copy of the user's capture records
+    private final ExecutorService historyExecutor = Executors.newSingleThreadExecutor(); // Reads the local store off the main thread
 
     // Firebase instances
     FirebaseAuth firebaseAuth;
-    FirebaseStorage firebaseStorage;
 
     @Override
     protected void onCreate(Bundle savedInstanceState)
@@ -48,6 +73,7 @@ public class HistoryActivity extends AppCompatActivity implements View.OnClickLi
         if (currentUser != null)
         {
             String userEmail = currentUser.getEmail();
+            HistoryClearJob.resumeIfPending(this, userEmail);
             fetchImages(userEmail);
         }
         else
@@ -63,49 +89,199 @@ public class HistoryActivity extends AppCompatActivity implements View.OnClickLi
     private void init()
     {
         btnReturn = findViewById(R.id.btnReturnID);
-        listView = findViewById(R.id.lstViewID);
+        txtSearch = findViewById(R.id.etxtSearchHistoryID);
+        recyclerView = findViewById(R.id.rvHistoryID);
         fullImageView = findViewById(R.id.fullImageView);
 
         btnReturn.setOnClickListener(this);
 
         firebaseAuth = FirebaseAuth.getInstance();
-        firebaseStorage = FirebaseStorage.getInstance();
+        historyStore = HistoryStore.getInstance(this);
 
         imageDataList = new ArrayList<>();
-        imageAdapter = new ImageAdapter(this, imageDataList, this::showFullScreenImage);
-        listView.setAdapter(imageAdapter);
+        imageAdapter = new ImageAdapter(this, this::showFullScreenImage);
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setAdapter(imageAdapter);
+
+        prefetcher = new HistoryPrefetcher(this, imageAdapter, layoutManager, position ->
+        {
+            // Load the next page once the lookahead reaches the end of the loaded rows
+            if (position >= imageDataList.size() - 1)
+                fetchNextPage();
+        });
     }
 
     /**
-     * Fetch images from Firebase Storage and populate the list.
+     * Show the user's history from the local store right away, then sync it with the Firestore index.
+     * Only the first page is loaded here, the following pages are loaded as the user scrolls.
      *
      * @param userEmail The email of the logged-in user.
      */
     private void fetchImages(String userEmail)
     {
-        StorageReference imagesRef = firebaseStorage.getReference().child("images/" + userEmail);
-
-        imagesRef.listAll()
-                .addOnSuccessListener(listResult ->
-                {
-                    for (StorageReference item : listResult.getItems())
-                    {
-                        item.getDownloadUrl().addOnSuccessListener(uri ->
-                                item.getMetadata().addOnSuccessListener(metadata ->
-                                {
-                                    String name = item.getName().split("_")[0];
-                                    String location = metadata.getCustomMetadata("location");
-
-                                    // Get the creation date from metadata
-                                    long creationTimeMillis = metadata.getCreationTimeMillis();
-                                    String creationDate = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date(creationTimeMillis));
-
-                                    imageDataList.add(new ImageData(name, uri.toString(), location, creationDate));
-                                    imageAdapter.notifyDataSetChanged();
-                                }).addOnFailureListener(e -> Toast.makeText(HistoryActivity.this, "Failed to get metadata: " + e.getMessage(), Toast.LENGTH_SHORT).show())).addOnFailureListener(e -> Toast.makeText(HistoryActivity.this, "Failed to get download URL: " + e.getMessage(), Toast.LENGTH_SHORT).show());
-                    }
-                })
-                .addOnFailureListener(e -> Toast.makeText(HistoryActivity.this, "Failed to list images: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+        this.userEmail = userEmail;
+        recyclerView.addOnScrollListener(prefetcher);
+
+        txtSearch.addTextChangedListener(new TextWatcher()
+        {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after)
+            {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count)
+            {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s)
+            {
+                // Search once the user pauses typing instead of on every key
+                txtSearch.removeCallbacks(searchRunnable);
+                txtSearch.postDelayed(searchRunnable, SEARCH_DELAY_MILLIS);
+            }
+        });
+
+        fetchNextPage();
+
+        HistorySync.sync(this, userEmail, (changed, error) ->
+        {
+            if (isDestroyed())
+                return;
+
+            if (changed)
+                reloadImages();
+            else if (error != null)
+                Toast.makeText(HistoryActivity.this, "Showing offline history: " + error.getMessage(), Toast.LENGTH_SHORT).show();
+        });
+    }
+
+    /**
+     * Load the next page of capture records from the local store and add it to the list.
+     * Does nothing while a page is loading or once the last page was reached.
+     */
+    private void fetchNextPage()
+    {
+        if (isLoadingPage || !hasMorePages)
+            return;
+
+        isLoadingPage = true;
+        CaptureRecord after = lastRecord;
+        HistoryQuery query = activeQuery;
+        int version = queryVersion;
+
+        historyExecutor.execute(() ->
+        {
+            List<CaptureRecord> records = loadRecords(query, after, PAGE_SIZE);
+
+            runOnUiThread(() ->
+            {
+                if (version != queryVersion)
+                    return;
+
+                addRecords(records);
+                hasMorePages = records.size() == PAGE_SIZE;
+                isLoadingPage = false;
+            });
+        });
+    }
+
+    /**
+     * Reload every row shown so far from the local store, after a sync has changed it.
+     */
+    private void reloadImages()
+    {
+        int count = Math.max(imageDataList.size(), PAGE_SIZE);
+        isLoadingPage = true;
+        HistoryQuery query = activeQuery;
+        int version = queryVersion;
+
+        historyExecutor.execute(() ->
+        {
+            List<CaptureRecord> records = loadRecords(query, null, count);
+
+            runOnUiThread(() ->
+            {
+                if (version != queryVersion)
+                    return;
+
+                imageDataList.clear();
+                lastRecord = null;
+                addRecords(records);
+                hasMorePages = records.size() == count;
+                isLoadingPage = false;
+            });
+        });
+    }
+
+    /**
+     * Parse the text of the search box and show the first page of matching records.
+     * An empty search shows the whole history again.
+     */
+    private void applySearch()
+    {
+        HistoryQuery query = HistoryQuery.parse(txtSearch.getText().toString(), Calendar.getInstance());
+        activeQuery = query.isEmpty() ? null : query;
+
+        // Drop the rows and any page still loading for the previous search
+        queryVersion++;
+        isLoadingPage = false;
+        hasMorePages = true;
+        imageDataList.clear();
+        lastRecord = null;
+        fetchNextPage();
+    }
+
+    /**
+     * Load a page of records from the local store. Must not be called on the main thread.
+     *
+     * @param query The search to filter by, or null for the whole history.
+     * @param after The last record shown, or null to load the first page.
+     * @param limit The maximum number of records to load.
+     * @return The records of the page, newest first.
+     */
+    private List<CaptureRecord> loadRecords(HistoryQuery query, CaptureRecord after, int limit)
+    {
+        if (query == null)
+            return historyStore.loadPage(userEmail, after, limit);
+
+        return historyStore.search(userEmail, query, after, limit);
+    }
+
+    /**
+     * Add capture records to the list.
+     *
+     * @param records The records to add, newest first.
+     */
+    private void addRecords(List<CaptureRecord> records)
+    {
+        for (CaptureRecord record : records)
+        {
+            String creationDate = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new Date(record.getTimestamp()));
+            imageDataList.add(new ImageData(record.getStoragePath(), record.getLabel(), record.getUrl(), record.getThumbnailUrl(), record.getGeneration(), record.getThumbnailGeneration(), record.getLocation(), creationDate));
+            lastRecord = record;
+        }
+
+        scheduleSubmit();
+    }
+
+    /**
+     * Submit the current list to the adapter after a short delay.
+     * Changes arriving within the delay are coalesced into a single diffed submission.
+     */
+    private void scheduleSubmit()
+    {
+        if (submitPending)
+            return;
+
+        submitPending = true;
+        recyclerView.postDelayed(() ->
+        {
+            submitPending = false;
+            imageAdapter.submitList(new ArrayList<>(imageDataList), prefetcher::onListChanged);
+        }, SUBMIT_DELAY_MILLIS);
     }
 
     @Override
@@ -115,7 +291,7 @@ public class HistoryActivity extends AppCompatActivity implements View.OnClickLi
         {
             if (fullImageView.getVisibility() == View.VISIBLE)
             {
-                fullImageView.setVisibility(View.GONE);
+                hideFullScreenImage();
             }
             else
             {
@@ -125,16 +301,62 @@ public class HistoryActivity extends AppCompatActivity implements View.OnClickLi
         }
     }
 
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+        txtSearch.removeCallbacks(searchRunnable);
+        prefetcher.release();
+        historyExecutor.shutdown();
+    }
+
     /**
-     * Show the selected image in full screen.
+     * Show the selected image in full screen. The original is downloaded into Glide's disk cache,
+     * and the viewer decodes only the part of it that is visible at the current zoom.
      *
-     * @param imageUrl The URL of the image to be displayed.
+     * @param imageData The history row of the image to be displayed.
      */
-    public void showFullScreenImage(String imageUrl)
+    public void showFullScreenImage(ImageData imageData)
     {
+        StorageGlideUrl original = StorageGlideUrl.originalOf(imageData);
+        if (original == null)
+            return;
+
         fullImageView.setVisibility(View.VISIBLE);
-        Glide.with(this).load(imageUrl).into(fullImageView);
         fullImageView.setOnClickListener(this::toggleFullScreenImage);
+
+        Glide.with(this).clear(fullImageTarget);
+        fullImageTarget = Glide.with(this).downloadOnly().load(original).into(new CustomTarget<File>()
+        {
+            @Override
+            public void onResourceReady(@NonNull File file, @Nullable Transition<? super File> transition)
+            {
+                fullImageView.setImageFile(file);
+            }
+
+            @Override
+            public void onLoadFailed(@Nullable Drawable errorDrawable)
+            {
+                Toast.makeText(HistoryActivity.this, "Failed to load image.", Toast.LENGTH_SHORT).show();
+                hideFullScreenImage();
+            }
+
+            @Override
+            public void onLoadCleared(@Nullable Drawable placeholder)
+            {
+            }
+        });
+    }
+
+    /**
+     * Hide the full screen image and release its memory.
+     */
+    private void hideFullScreenImage()
+    {
+        Glide.with(this).clear(fullImageTarget);
+        fullImageTarget = null;
+        fullImageView.recycle();
+        fullImageView.setVisibility(View.GONE);
     }
 
     /**
@@ -146,7 +368,7 @@ public class HistoryActivity extends AppCompatActivity implements View.OnClickLi
     {
         if (fullImageView.getVisibility() == View.VISIBLE)
         {
-            fullImageView.setVisibility(View.GONE);
+            hideFullScreenImage();
         }
     }
 }
@@ -0,0 +1,363 @@
+package com.example.findit;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.WriteBatch;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.ListResult;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * HistoryClearJob deletes all captures of a user taken before the clear was requested.
+ * The local history is cleared first in one transaction. Then the capture index is walked page by page:
+ * the images and thumbnails of each page are deleted with a bounded number of requests in flight,
+ * and the page's records are turned into tombstones with a single batched write.
+ * Progress is checkpointed in SharedPreferences after every page, up to the first capture that could not be deleted,
+ * so a clear interrupted by process death resumes where it stopped the next time the settings or history screen is opened.
+ * All disk and network work runs on a single background executor.
+ */
+public final class HistoryClearJob
+{
+    private static final String PREFS_NAME = "FindItPrefs"; // SharedPreferences file name
+    private static final String KEY_OWNER = "clear_history_owner"; // Email of the user whose history is being cleared
+    private static final String KEY_CUTOFF = "clear_history_cutoff"; // Captures taken up to this time are deleted
+    private static final String KEY_DONE_UNTIL = "clear_history_done_until"; // Captures taken before this time are already deleted
+
+    private static final int PAGE_SIZE = 100; // Number of capture records deleted per page
+    private static final int MAX_CONCURRENT_DELETES = 4; // Number of Storage requests in flight at once
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(); // Runs the clear off the main thread
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper()); // Delivers progress on the main thread
+
+    private static boolean running; // Whether a clear is running, only accessed on the main thread
+    private static Listener listener; // Receives progress, only accessed on the main thread
+
+    /**
+     * Interface for receiving the progress of a clear. All methods are called on the main thread.
+     */
+    public interface Listener
+    {
+        /**
+         * Called after each page of captures was deleted.
+         *
+         * @param deleted The number of captures deleted so far
+         */
+        void onClearProgress(int deleted);
+
+        /**
+         * Called once the clear has finished.
+         *
+         * @param deleted The number of captures deleted
+         * @param failed  The number of captures that could not be deleted and are retried on the next resume
+         * @param error   The error that stopped the clear, or null if it ran to the end
+         */
+        void onClearFinished(int deleted, int failed, Exception error);
+    }
+
+    private HistoryClearJob()
+    {
+    }
+
+    /**
+     * Starts clearing the history of a user, covering every capture taken until now.
+     * Must be called on the main thread.
+     *
+     * @param context Any context
+     * @param email   The email of the user
+     */
+    public static void start(Context context, String email)
+    {
+        long cutoff = System.currentTimeMillis();
+        Context appContext = context.getApplicationContext();
+
+        // Queued ahead of the run, which reads the checkpoint, on the same executor
+        executor.execute(() -> {
+            getPrefs(appContext).edit()
+                    .putString(KEY_OWNER, email)
+                    .putLong(KEY_CUTOFF, cutoff)
+                    .putLong(KEY_DONE_UNTIL, 0)
+                    .commit();
+
+            // Hide the records first, the remote deletion follows
+            HistoryStore.getInstance(appContext).clear(email, cutoff);
+        });
+        run(appContext, email);
+    }
+
+    /**
+     * Resumes an interrupted clear of the user's history, if there is one.
+     * Must be called on the main thread.
+     *
+     * @param context Any context
+     * @param email   The email of the logged-in user
+     */
+    public static void resumeIfPending(Context context, String email)
+    {
+        if (email != null && email.equals(getPrefs(context).getString(KEY_OWNER, null)))
+            run(context, email);
+    }
+
+    /**
+     * Checks whether a clear is running.
+     *
+     * @return true if a clear is running, false otherwise
+     */
+    public static boolean isRunning()
+    {
+        return running;
+    }
+
+    /**
+     * Sets the listener receiving progress, replacing the previous one. Must be called on the main thread.
+     *
+     * @param newListener The listener, or null to stop receiving progress
+     */
+    public static void setListener(Listener newListener)
+    {
+        listener = newListener;
+    }
+
+    /**
+     * Runs the clear recorded in the preferences on the background executor, unless one is running already.
+     *
+     * @param context Any context
+     * @param email   The email of the user
+     */
+    private static void run(Context context, String email)
+    {
+        if (running)
+            return;
+
+        running = true;
+        Context appContext = context.getApplicationContext();
+
+        executor.execute(() -> {
+            SharedPreferences prefs = getPrefs(appContext);
+            long cutoff = prefs.getLong(KEY_CUTOFF, 0);
+            long doneUntil = prefs.getLong(KEY_DONE_UNTIL, 0);
+            int[] counts = new int[2]; // Deleted and failed captures
+            long firstFailedAt = Long.MAX_VALUE; // Timestamp of the earliest capture that could not be deleted
+            Exception error = null;
+
+            try
+            {
+                // Records stamped exactly at the checkpoint are fetched again, they are skipped once tombstoned
+                Query query = CaptureRecord.collection(email)
+                        .whereGreaterThanOrEqualTo(CaptureRecord.FIELD_TIMESTAMP, doneUntil)
+                        .whereLessThanOrEqualTo(CaptureRecord.FIELD_TIMESTAMP, cutoff)
+                        .orderBy(CaptureRecord.FIELD_TIMESTAMP)
+                        .limit(PAGE_SIZE);
+
+                while (true)
+                {
+                    List<DocumentSnapshot> documents = Tasks.await(query.get()).getDocuments();
+                    firstFailedAt = Math.min(firstFailedAt, deletePage(documents, counts));
+
+                    // The checkpoint never moves past a failed capture, so a resumed clear fetches it again
+                    if (!documents.isEmpty())
+                    {
+                        Long last = documents.get(documents.size() - 1).getLong(CaptureRecord.FIELD_TIMESTAMP);
+                        long checkpoint = last != null ? Math.min(last, firstFailedAt) : firstFailedAt;
+                        if (checkpoint != Long.MAX_VALUE && checkpoint > doneUntil)
+                        {
+                            doneUntil = checkpoint;
+                            prefs.edit().putLong(KEY_DONE_UNTIL, doneUntil).commit();
+                        }
+                    }
+
+                    int deleted = counts[0];
+                    mainHandler.post(() -> {
+                        if (listener != null)
+                            listener.onClearProgress(deleted);
+                    });
+
+                    if (documents.size() < PAGE_SIZE)
+                        break;
+
+                    query = query.startAfter(documents.get(documents.size() - 1));
+                }
+
+                // Images uploaded before the capture index existed have no record, sweep the folders for them
+                StorageReference userImagesRef = FirebaseStorage.getInstance().getReference().child("images/" + email);
+                sweepFolder(userImagesRef, cutoff, counts);
+                sweepFolder(userImagesRef.child(CaptureRecord.THUMBNAIL_DIR), cutoff, counts);
+
+                // Records synced back while the clear was running are removed again
+                HistoryStore.getInstance(appContext).clear(email, cutoff);
+
+                if (counts[1] == 0)
+                    prefs.edit().remove(KEY_OWNER).remove(KEY_CUTOFF).remove(KEY_DONE_UNTIL).commit();
+            }
+
+            catch (Exception e)
+            {
+                error = e;
+            }
+
+            Exception failure = error;
+            mainHandler.post(() -> {
+                running = false;
+                if (listener != null)
+                    listener.onClearFinished(counts[0], counts[1], failure);
+            });
+        });
+    }
+
+    /**
+     * Deletes the images of a page of capture records and turns the records into tombstones.
+     * Records whose images could not be deleted are left as they are, so a later run retries them.
+     *
+     * @param documents The capture records of the page, ordered by timestamp
+     * @param counts    The deleted and failed counters to update
+     * @return The timestamp of the first record that could not be deleted, or Long.MAX_VALUE if none failed
+     * @throws Exception If the tombstones cannot be written or the thread is interrupted
+     */
+    private static long deletePage(List<DocumentSnapshot> documents, int[] counts) throws Exception
+    {
+        FirebaseStorage storage = FirebaseStorage.getInstance();
+        List<DocumentSnapshot> pending = new ArrayList<>();
+        List<StorageReference> refs = new ArrayList<>();
+
+        for (DocumentSnapshot document : documents)
+        {
+            String storagePath = document.getString("storagePath");
+            if (Boolean.TRUE.equals(document.getBoolean(CaptureRecord.FIELD_DELETED)) || storagePath == null)
+                continue;
+
+            pending.add(document);
+            refs.add(storage.getReference().child(storagePath));
+            refs.add(storage.getReference().child(CaptureRecord.thumbnailPathOf(storagePath)));
+        }
+
+        if (pending.isEmpty())
+            return Long.MAX_VALUE;
+
+        List<Task<Void>> deletions = deleteBounded(refs);
+
+        WriteBatch batch = FirebaseFirestore.getInstance().batch();
+        int tombstones = 0;
+        long firstFailedAt = Long.MAX_VALUE;
+        for (int i = 0; i < pending.size(); i++)
+        {
+            // Each record owns two deletions, the image and its thumbnail
+            if (isDeleted(deletions.get(2 * i)) && isDeleted(deletions.get(2 * i + 1)))
+            {
+                batch.update(pending.get(i).getReference(), CaptureRecord.FIELD_DELETED, true, CaptureRecord.FIELD_UPDATED_AT, FieldValue.serverTimestamp());
+                tombstones++;
+            }
+            else
+            {
+                counts[1]++;
+                Long timestamp = pending.get(i).getLong(CaptureRecord.FIELD_TIMESTAMP);
+                firstFailedAt = Math.min(firstFailedAt, timestamp != null ? timestamp : 0);
+            }
+        }
+
+        Tasks.await(batch.commit());
+        counts[0] += tombstones;
+        return firstFailedAt;
+    }
+
+    /**
+     * Deletes the files of a Storage folder, page by page, that were created up to the cutoff.
+     * Files created later belong to captures taken after the clear was requested and are kept.
+     *
+     * @param folder The folder to sweep
+     * @param cutoff The time up to which files are deleted
+     * @param counts The deleted and failed counters to update
+     * @throws Exception If the folder cannot be listed or the thread is interrupted
+     */
+    private static void sweepFolder(StorageReference folder, long cutoff, int[] counts) throws Exception
+    {
+        String pageToken = null;
+        do
+        {
+            ListResult page = Tasks.await(pageToken == null ? folder.list(PAGE_SIZE) : folder.list(PAGE_SIZE, pageToken));
+
+            List<Task<StorageMetadata>> metadata = new ArrayList<>();
+            for (StorageReference item : page.getItems())
+                metadata.add(item.getMetadata());
+            Tasks.await(Tasks.whenAllComplete(metadata));
+
+            List<StorageReference> refs = new ArrayList<>();
+            for (Task<StorageMetadata> task : metadata)
+                if (task.isSuccessful() && task.getResult().getCreationTimeMillis() <= cutoff)
+                    refs.add(task.getResult().getReference());
+
+            for (Task<Void> deletion : deleteBounded(refs))
+                if (!isDeleted(deletion))
+                    counts[1]++;
+
+            pageToken = page.getPageToken();
+        }
+        while (pageToken != null);
+    }
+
+    /**
+     * Deletes the given files with at most MAX_CONCURRENT_DELETES requests in flight,
+     * and waits until all of them have completed.
+     *
+     * @param refs The files to delete
+     * @return The completed deletions, in the order of the files
+     * @throws Exception If the thread is interrupted
+     */
+    private static List<Task<Void>> deleteBounded(List<StorageReference> refs) throws Exception
+    {
+        Semaphore permits = new Semaphore(MAX_CONCURRENT_DELETES);
+        List<Task<Void>> deletions = new ArrayList<>();
+
+        for (StorageReference ref : refs)
+        {
+            permits.acquire();
+            Task<Void> deletion = ref.delete();
+            deletion.addOnCompleteListener(Runnable::run, task -> permits.release());
+            deletions.add(deletion);
+        }
+
+        Tasks.await(Tasks.whenAllComplete(deletions));
+        return deletions;
+    }
+
+    /**
+     * Checks whether a deletion removed its file, counting a file that was already gone as removed.
+     *
+     * @param deletion The completed deletion
+     * @return true if the file no longer exists, false otherwise
+     */
+    private static boolean isDeleted(Task<Void> deletion)
+    {
+        if (deletion.isSuccessful())
+            return true;
+
+        Exception e = deletion.getException();
+        return e instanceof StorageException && ((StorageException) e).getErrorCode() == StorageException.ERROR_OBJECT_NOT_FOUND;
+    }
+
+    /**
+     * Returns the preferences holding the checkpoint.
+     *
+     * @param context Any context
+     * @return The app preferences
+     */
+    private static SharedPreferences getPrefs(Context context)
+    {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
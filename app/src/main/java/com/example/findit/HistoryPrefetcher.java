@@ -0,0 +1,305 @@
+package com.example.findit;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.net.ConnectivityManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * HistoryPrefetcher loads history content ahead of need, driven by the scroll position and velocity.
+ * The faster the list scrolls, the further ahead it asks for the next page from the local store
+ * and preloads the thumbnails of the upcoming rows, in the scroll direction.
+ * When the list rests, the originals of the visible rows are downloaded into the disk cache after a short dwell,
+ * so opening one of them in full screen starts from a local file.
+ * Network prefetches share a byte budget and are paused while the active network is metered.
+ * All methods are called on the main thread.
+ */
+public class HistoryPrefetcher extends RecyclerView.OnScrollListener
+{
+    private static final int MIN_LOOKAHEAD_ROWS = 5; // Rows prefetched ahead of the visible ones when scrolling slowly
+    private static final int MAX_LOOKAHEAD_ROWS = 60; // Upper bound of the rows prefetched ahead
+    private static final float LOOKAHEAD_SECONDS = 1.5f; // Scrolling time the prefetched rows should cover
+    private static final float VELOCITY_SMOOTHING = 0.3f; // Weight of the newest sample in the smoothed velocity
+    private static final long DWELL_MILLIS = 1500; // Time the list must rest before the originals of the visible rows are fetched
+    private static final int MAX_ORIGINALS_IN_FLIGHT = 2; // Originals downloaded at once
+    private static final long BUDGET_BYTES = 25L * 1024 * 1024; // Bytes the prefetcher may download while the screen is open
+    private static final long THUMBNAIL_BYTES_ESTIMATE = 30L * 1024; // Charged per preloaded thumbnail
+    private static final long ORIGINAL_BYTES_ESTIMATE = 2L * 1024 * 1024; // Charged per original until its real size is known
+
+    /**
+     * Interface for loading more pages of the history.
+     */
+    public interface PageLoader
+    {
+        /**
+         * Called when the rows up to the given position should be loaded.
+         *
+         * @param position The last row position that should be available
+         */
+        void onLookahead(int position);
+    }
+
+    private final Context context;
+    private final ImageAdapter adapter;
+    private final LinearLayoutManager layoutManager;
+    private final PageLoader pageLoader;
+    private final ConnectivityManager connectivityManager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable dwellRunnable = this::prefetchVisibleOriginals; // Runs once the list rested long enough
+    private final Set<String> prefetchedThumbnails = new HashSet<>(); // Storage paths whose thumbnails were preloaded
+    private final Set<String> prefetchedOriginals = new HashSet<>(); // Storage paths whose originals were requested
+    private final List<FutureTarget<File>> originalDownloads = new ArrayList<>(); // Downloads still running, cancelled on release
+
+    private float rowsPerSecond; // Smoothed scroll velocity, positive when scrolling down
+    private long lastScrollTime; // Uptime of the previous scroll event
+    private long spentBytes; // Bytes downloaded or reserved so far
+    private int originalsInFlight; // Originals being downloaded
+    private boolean idle = true; // Whether the list is resting
+
+    /**
+     * Constructor for HistoryPrefetcher.
+     *
+     * @param context       The context of the history screen
+     * @param adapter       The adapter of the history list
+     * @param layoutManager The layout manager of the history list
+     * @param pageLoader    Loads more pages when the lookahead reaches the end of the loaded rows
+     */
+    public HistoryPrefetcher(Context context, ImageAdapter adapter, LinearLayoutManager layoutManager, PageLoader pageLoader)
+    {
+        this.context = context;
+        this.adapter = adapter;
+        this.layoutManager = layoutManager;
+        this.pageLoader = pageLoader;
+        this.connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy)
+    {
+        updateVelocity(dy);
+
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION)
+            return;
+
+        int lookahead = lookaheadRows();
+        if (rowsPerSecond >= 0)
+        {
+            pageLoader.onLookahead(last + lookahead);
+            prefetchThumbnails(last + 1, last + lookahead);
+        }
+        else
+            prefetchThumbnails(first - lookahead, first - 1);
+
+        handler.removeCallbacks(dwellRunnable);
+    }
+
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState)
+    {
+        handler.removeCallbacks(dwellRunnable);
+        idle = newState == RecyclerView.SCROLL_STATE_IDLE;
+
+        if (idle)
+        {
+            rowsPerSecond = 0;
+            handler.postDelayed(dwellRunnable, DWELL_MILLIS);
+        }
+    }
+
+    /**
+     * Prefetches for the rows currently shown, e.g. after the list was replaced by a new page or search.
+     */
+    public void onListChanged()
+    {
+        int last = layoutManager.findLastVisibleItemPosition();
+        pageLoader.onLookahead(Math.max(last, 0) + MIN_LOOKAHEAD_ROWS);
+        prefetchThumbnails(last + 1, last + MIN_LOOKAHEAD_ROWS);
+
+        handler.removeCallbacks(dwellRunnable);
+        handler.postDelayed(dwellRunnable, DWELL_MILLIS);
+    }
+
+    /**
+     * Stops all pending work and cancels the originals still downloading.
+     */
+    public void release()
+    {
+        handler.removeCallbacks(dwellRunnable);
+        for (FutureTarget<File> download : originalDownloads)
+            Glide.with(context.getApplicationContext()).clear(download);
+
+        originalDownloads.clear();
+    }
+
+    /**
+     * Updates the smoothed scroll velocity from a scroll event.
+     *
+     * @param dy The vertical scroll distance in pixels
+     */
+    private void updateVelocity(int dy)
+    {
+        long now = SystemClock.uptimeMillis();
+        long elapsed = now - lastScrollTime;
+        lastScrollTime = now;
+
+        View firstChild = layoutManager.getChildAt(0);
+        if (firstChild == null || firstChild.getHeight() == 0 || elapsed <= 0 || elapsed > 500)
+            return;
+
+        float sample = (float) dy / firstChild.getHeight() * 1000f / elapsed;
+        rowsPerSecond += VELOCITY_SMOOTHING * (sample - rowsPerSecond);
+    }
+
+    /**
+     * Returns the number of rows to prefetch ahead, covering LOOKAHEAD_SECONDS of scrolling at the current velocity.
+     *
+     * @return The lookahead in rows
+     */
+    private int lookaheadRows()
+    {
+        int rows = MIN_LOOKAHEAD_ROWS + Math.round(Math.abs(rowsPerSecond) * LOOKAHEAD_SECONDS);
+        return Math.min(rows, MAX_LOOKAHEAD_ROWS);
+    }
+
+    /**
+     * Preloads the thumbnails of the rows in the given range into Glide's memory cache.
+     *
+     * @param from The first row position, inclusive
+     * @param to   The last row position, inclusive
+     */
+    private void prefetchThumbnails(int from, int to)
+    {
+        List<ImageData> images = adapter.getCurrentList();
+        from = Math.max(from, 0);
+        to = Math.min(to, images.size() - 1);
+
+        for (int position = from; position <= to; position++)
+        {
+            ImageData imageData = images.get(position);
+            if (prefetchedThumbnails.contains(imageData.getStoragePath()))
+                continue;
+
+            if (!reserve(THUMBNAIL_BYTES_ESTIMATE))
+                return;
+
+            prefetchedThumbnails.add(imageData.getStoragePath());
+            adapter.thumbnailRequest(imageData).addListener(new RequestListener<Drawable>()
+            {
+                @Override
+                public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Drawable> target, boolean isFirstResource)
+                {
+                    handler.post(() -> spentBytes -= THUMBNAIL_BYTES_ESTIMATE);
+                    return false;
+                }
+
+                @Override
+                public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target, DataSource dataSource, boolean isFirstResource)
+                {
+                    // Thumbnails served from a cache downloaded nothing, so their estimate is refunded
+                    if (dataSource != DataSource.REMOTE)
+                        handler.post(() -> spentBytes -= THUMBNAIL_BYTES_ESTIMATE);
+                    return false;
+                }
+            }).preload();
+        }
+    }
+
+    /**
+     * Downloads the originals of the visible rows into the disk cache the full screen viewer reads from.
+     */
+    private void prefetchVisibleOriginals()
+    {
+        List<ImageData> images = adapter.getCurrentList();
+        int first = layoutManager.findFirstCompletelyVisibleItemPosition();
+        int last = layoutManager.findLastCompletelyVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION)
+            return;
+
+        for (int position = first; position <= last && position < images.size(); position++)
+        {
+            if (originalsInFlight >= MAX_ORIGINALS_IN_FLIGHT)
+                return;
+
+            ImageData imageData = images.get(position);
+            StorageGlideUrl original = StorageGlideUrl.originalOf(imageData);
+            if (original == null || prefetchedOriginals.contains(imageData.getStoragePath()))
+                continue;
+
+            if (!reserve(ORIGINAL_BYTES_ESTIMATE))
+                return;
+
+            prefetchedOriginals.add(imageData.getStoragePath());
+            originalsInFlight++;
+            originalDownloads.add(Glide.with(context).downloadOnly().load(original).listener(new RequestListener<File>()
+            {
+                @Override
+                public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<File> target, boolean isFirstResource)
+                {
+                    handler.post(() -> {
+                        originalDownloads.remove(target);
+                        spentBytes -= ORIGINAL_BYTES_ESTIMATE;
+                        originalsInFlight--;
+                    });
+                    return false;
+                }
+
+                @Override
+                public boolean onResourceReady(File file, Object model, Target<File> target, DataSource dataSource, boolean isFirstResource)
+                {
+                    // Replace the estimate with the real size, files already on disk cost nothing
+                    long bytes = dataSource == DataSource.REMOTE ? file.length() : 0;
+                    handler.post(() -> {
+                        originalDownloads.remove(target);
+                        spentBytes += bytes - ORIGINAL_BYTES_ESTIMATE;
+                        originalsInFlight--;
+                        if (idle)
+                            prefetchVisibleOriginals();
+                    });
+                    return false;
+                }
+            }).submit());
+        }
+    }
+
+    /**
+     * Reserves part of the byte budget for a network prefetch.
+     * Nothing is reserved while the active network is metered or the budget is spent.
+     *
+     * @param bytes The expected size of the download
+     * @return true if the prefetch may start, false otherwise
+     */
+    private boolean reserve(long bytes)
+    {
+        if (connectivityManager == null || connectivityManager.isActiveNetworkMetered())
+            return false;
+
+        if (spentBytes + bytes > BUDGET_BYTES)
+            return false;
+
+        spentBytes += bytes;
+        return true;
+    }
+}
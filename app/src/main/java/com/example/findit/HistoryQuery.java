@@ -0,0 +1,262 @@
+package com.example.findit;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * HistoryQuery is a parsed history search such as "dog near tel aviv last month".
+ * Words after "near", "at" or "in" are matched against the location, date phrases become a time range,
+ * and all other words are matched against the label or the location. Every word matches as a prefix.
+ */
+public class HistoryQuery
+{
+    private static final String[] LOCATION_KEYWORDS = {"near", "at", "in"}; // Words introducing location terms
+
+    private final List<String> terms = new ArrayList<>(); // Words matched against the label or the location
+    private final List<String> locationTerms = new ArrayList<>(); // Words matched against the location only
+    private long fromMillis = 0; // Start of the time range, inclusive
+    private long untilMillis = Long.MAX_VALUE; // End of the time range, exclusive
+
+    private HistoryQuery()
+    {
+    }
+
+    /**
+     * Parses a search typed by the user.
+     *
+     * @param text The search text
+     * @param now  The current time, which relative date phrases are resolved against
+     * @return The parsed query
+     */
+    public static HistoryQuery parse(String text, Calendar now)
+    {
+        HistoryQuery query = new HistoryQuery();
+        String[] words = text.toLowerCase(Locale.ROOT).trim().split("\\s+");
+        boolean inLocation = false;
+
+        for (int i = 0; i < words.length; i++)
+        {
+            int consumed = query.parseDatePhrase(words, i, now);
+            if (consumed > 0)
+            {
+                i += consumed - 1;
+                inLocation = false;
+                continue;
+            }
+
+            if (isLocationKeyword(words[i]))
+            {
+                inLocation = true;
+                continue;
+            }
+
+            // Punctuation splits words the same way the full-text tokenizer does, e.g. "tel-aviv"
+            for (String term : words[i].split("[^\\p{L}\\p{N}]+"))
+            {
+                if (term.isEmpty())
+                    continue;
+
+                if (inLocation)
+                    query.locationTerms.add(term);
+                else
+                    query.terms.add(term);
+            }
+        }
+
+        return query;
+    }
+
+    /**
+     * Checks whether the query has no terms and no time range, so it matches every record.
+     *
+     * @return true if the query matches everything, false otherwise
+     */
+    public boolean isEmpty()
+    {
+        return !hasTerms() && fromMillis == 0 && untilMillis == Long.MAX_VALUE;
+    }
+
+    /**
+     * Checks whether the query has words to match, as opposed to only a time range.
+     *
+     * @return true if the query has words, false otherwise
+     */
+    public boolean hasTerms()
+    {
+        return !terms.isEmpty() || !locationTerms.isEmpty();
+    }
+
+    /**
+     * Builds the full-text MATCH expression of the query. All words must match, each as a prefix.
+     *
+     * @param locationColumn The name of the full-text column holding the location
+     * @return The MATCH expression
+     */
+    public String toMatchExpression(String locationColumn)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (String term : terms)
+            builder.append(term).append("* ");
+
+        for (String term : locationTerms)
+            builder.append(locationColumn).append(':').append(term).append("* ");
+
+        return builder.toString().trim();
+    }
+
+    public List<String> getTerms()
+    {
+        return Collections.unmodifiableList(terms);
+    }
+
+    public List<String> getLocationTerms()
+    {
+        return Collections.unmodifiableList(locationTerms);
+    }
+
+    public long getFromMillis()
+    {
+        return fromMillis;
+    }
+
+    public long getUntilMillis()
+    {
+        return untilMillis;
+    }
+
+    /**
+     * Reads a date phrase starting at the given word and sets the time range from it.
+     * Supported phrases are "today", "yesterday", "this/last week|month|year" and "last/past N days|weeks|months".
+     *
+     * @param words The words of the search
+     * @param index The index of the first word of the phrase
+     * @param now   The current time
+     * @return The number of words the phrase consists of, or 0 if no date phrase starts at the index
+     */
+    private int parseDatePhrase(String[] words, int index, Calendar now)
+    {
+        String word = words[index];
+        String next = index + 1 < words.length ? words[index + 1] : "";
+
+        if (word.equals("today"))
+        {
+            setRange(startOf(now, Calendar.DAY_OF_MONTH, 0), Calendar.DAY_OF_MONTH, 1);
+            return 1;
+        }
+
+        if (word.equals("yesterday"))
+        {
+            setRange(startOf(now, Calendar.DAY_OF_MONTH, -1), Calendar.DAY_OF_MONTH, 1);
+            return 1;
+        }
+
+        int field = calendarField(next);
+        if (field != -1 && (word.equals("this") || word.equals("last")))
+        {
+            setRange(startOf(now, field, word.equals("this") ? 0 : -1), field, 1);
+            return 2;
+        }
+
+        if ((word.equals("last") || word.equals("past")) && index + 2 < words.length && next.matches("\\d{1,4}"))
+        {
+            int unit = calendarField(words[index + 2]);
+            if (unit != -1)
+            {
+                Calendar from = (Calendar) now.clone();
+                from.add(unit, -Integer.parseInt(next));
+                fromMillis = from.getTimeInMillis();
+                untilMillis = Long.MAX_VALUE;
+                return 3;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Sets the time range to the given number of calendar periods from the given start.
+     *
+     * @param start  The start of the range
+     * @param field  The calendar field of the period
+     * @param amount The number of periods in the range
+     */
+    private void setRange(Calendar start, int field, int amount)
+    {
+        fromMillis = start.getTimeInMillis();
+        start.add(field, amount);
+        untilMillis = start.getTimeInMillis();
+    }
+
+    /**
+     * Returns the start of the calendar period containing the current time, shifted by a number of periods.
+     *
+     * @param now    The current time
+     * @param field  The calendar field of the period (day, week, month or year)
+     * @param offset The number of periods to shift by
+     * @return The start of the period
+     */
+    private static Calendar startOf(Calendar now, int field, int offset)
+    {
+        Calendar start = (Calendar) now.clone();
+        start.set(Calendar.HOUR_OF_DAY, 0);
+        start.set(Calendar.MINUTE, 0);
+        start.set(Calendar.SECOND, 0);
+        start.set(Calendar.MILLISECOND, 0);
+
+        // Setting DAY_OF_WEEK alone may resolve against a stale week, so step back to the first day instead
+        if (field == Calendar.WEEK_OF_YEAR)
+            start.add(Calendar.DAY_OF_MONTH, -((start.get(Calendar.DAY_OF_WEEK) - start.getFirstDayOfWeek() + 7) % 7));
+        else if (field == Calendar.MONTH)
+            start.set(Calendar.DAY_OF_MONTH, 1);
+        else if (field == Calendar.YEAR)
+            start.set(Calendar.DAY_OF_YEAR, 1);
+
+        start.add(field, offset);
+        return start;
+    }
+
+    /**
+     * Maps a period word to its calendar field.
+     *
+     * @param word The word, singular or plural
+     * @return The calendar field, or -1 if the word is not a period
+     */
+    private static int calendarField(String word)
+    {
+        switch (word)
+        {
+            case "day":
+            case "days":
+                return Calendar.DAY_OF_MONTH;
+            case "week":
+            case "weeks":
+                return Calendar.WEEK_OF_YEAR;
+            case "month":
+            case "months":
+                return Calendar.MONTH;
+            case "year":
+            case "years":
+                return Calendar.YEAR;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Checks whether the word introduces location terms.
+     *
+     * @param word The word
+     * @return true if the following words are location terms, false otherwise
+     */
+    private static boolean isLocationKeyword(String word)
+    {
+        for (String keyword : LOCATION_KEYWORDS)
+            if (keyword.equals(word))
+                return true;
+
+        return false;
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.findit;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HistoryStore keeps a local copy of the user's capture records in SQLite.
+ * The history screen renders from it instantly and offline, while HistorySync reconciles it with Firestore.
+ * All labels of a capture, those of its detected objects included, and its location are indexed in an FTS4 table kept up to date by triggers, so searches never touch the network.
+ */
+public class HistoryStore extends SQLiteOpenHelper
+{
+    private static final String DATABASE_NAME = "history.db"; // Database file name
+    private static final int DATABASE_VERSION = 7; // Database schema version
+
+    private static final String TABLE_HISTORY = "history";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_STORAGE_PATH = "storage_path";
+    private static final String COLUMN_OWNER = "owner";
+    private static final String COLUMN_LABEL = "label";
+    private static final String COLUMN_LABELS = "labels";
+    private static final String COLUMN_REGIONS = "regions";
+    private static final String COLUMN_LABEL_TERMS = "label_terms"; // Texts of all labels, without confidences, for the full-text index
+    private static final String COLUMN_LOCATION = "location";
+    private static final String COLUMN_TIMESTAMP = "timestamp";
+    private static final String COLUMN_URL = "url";
+    private static final String COLUMN_THUMBNAIL_URL = "thumbnail_url";
+    private static final String COLUMN_GENERATION = "generation";
+    private static final String COLUMN_THUMBNAIL_GENERATION = "thumbnail_generation";
+    private static final String COLUMN_WIDTH = "width";
+    private static final String COLUMN_HEIGHT = "height";
+
+    private static final String TABLE_SEARCH = "history_fts"; // Full-text index over the labels and location of each row
+
+    private static final String TABLE_SYNC_STATE = "sync_state";
+    private static final String COLUMN_SYNCED_UNTIL = "synced_until";
+
+    private static final String PAGE_ORDER = COLUMN_TIMESTAMP + " DESC, " + COLUMN_STORAGE_PATH + " DESC"; // Order of pages, unique per row
+
+    private static HistoryStore instance; // The shared instance
+
+    private HistoryStore(Context context)
+    {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * Returns the shared HistoryStore.
+     *
+     * @param context Any context
+     * @return The shared instance
+     */
+    public static synchronized HistoryStore getInstance(Context context)
+    {
+        if (instance == null)
+            instance = new HistoryStore(context);
+
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db)
+    {
+        db.execSQL("CREATE TABLE " + TABLE_HISTORY + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_STORAGE_PATH + " TEXT NOT NULL UNIQUE, "
+                + COLUMN_OWNER + " TEXT NOT NULL, "
+                + COLUMN_LABEL + " TEXT, "
+                + COLUMN_LABELS + " TEXT, "
+                + COLUMN_REGIONS + " TEXT, "
+                + COLUMN_LABEL_TERMS + " TEXT, "
+                + COLUMN_LOCATION + " TEXT, "
+                + COLUMN_TIMESTAMP + " INTEGER NOT NULL, "
+                + COLUMN_URL + " TEXT, "
+                + COLUMN_THUMBNAIL_URL + " TEXT, "
+                + COLUMN_GENERATION + " TEXT, "
+                + COLUMN_THUMBNAIL_GENERATION + " TEXT, "
+                + COLUMN_WIDTH + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_HEIGHT + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX history_owner_timestamp ON " + TABLE_HISTORY + " (" + COLUMN_OWNER + ", " + COLUMN_TIMESTAMP + " DESC, " + COLUMN_STORAGE_PATH + " DESC)");
+
+        // The index reads its content from the history table, so only the inverted index itself is stored twice
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_SEARCH + " USING fts4(content=\"" + TABLE_HISTORY + "\", "
+                + COLUMN_LABEL_TERMS + ", " + COLUMN_LOCATION + ")");
+        db.execSQL("CREATE TRIGGER history_before_delete BEFORE DELETE ON " + TABLE_HISTORY + " BEGIN "
+                + "DELETE FROM " + TABLE_SEARCH + " WHERE docid = old." + COLUMN_ID + "; END");
+        db.execSQL("CREATE TRIGGER history_before_update BEFORE UPDATE ON " + TABLE_HISTORY + " BEGIN "
+                + "DELETE FROM " + TABLE_SEARCH + " WHERE docid = old." + COLUMN_ID + "; END");
+        db.execSQL("CREATE TRIGGER history_after_insert AFTER INSERT ON " + TABLE_HISTORY + " BEGIN "
+                + "INSERT INTO " + TABLE_SEARCH + " (docid, " + COLUMN_LABEL_TERMS + ", " + COLUMN_LOCATION + ") "
+                + "VALUES (new." + COLUMN_ID + ", new." + COLUMN_LABEL_TERMS + ", new." + COLUMN_LOCATION + "); END");
+        db.execSQL("CREATE TRIGGER history_after_update AFTER UPDATE ON " + TABLE_HISTORY + " BEGIN "
+                + "INSERT INTO " + TABLE_SEARCH + " (docid, " + COLUMN_LABEL_TERMS + ", " + COLUMN_LOCATION + ") "
+                + "VALUES (new." + COLUMN_ID + ", new." + COLUMN_LABEL_TERMS + ", new." + COLUMN_LOCATION + "); END");
+
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " ("
+                + COLUMN_OWNER + " TEXT PRIMARY KEY, "
+                + COLUMN_SYNCED_UNTIL + " INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db)
+    {
+        // Rows replaced on conflict must fire the delete trigger too, or their old index entries would remain
+        db.execSQL("PRAGMA recursive_triggers = ON");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
+    {
+        // The store is a cache of Firestore, so it is simply rebuilt, with the sync cursor reset
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SEARCH);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_HISTORY);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+        onCreate(db);
+    }
+
+    /**
+     * Inserts or replaces a single capture record.
+     *
+     * @param owner  The email of the user owning the record
+     * @param record The record to store
+     */
+    public synchronized void upsert(String owner, CaptureRecord record)
+    {
+        getWritableDatabase().insertWithOnConflict(TABLE_HISTORY, null, toValues(owner, record), SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Applies a batch of changes from Firestore and advances the sync cursor in one transaction.
+     * Tombstones delete the local row, every other record is inserted or replaced.
+     *
+     * @param owner       The email of the user owning the records
+     * @param changes     The changed records, tombstones included
+     * @param syncedUntil The server time up to which all changes have been applied
+     */
+    public synchronized void applyChanges(String owner, List<CaptureRecord> changes, long syncedUntil)
+    {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try
+        {
+            for (CaptureRecord record : changes)
+            {
+                if (record.isDeleted())
+                    db.delete(TABLE_HISTORY, COLUMN_STORAGE_PATH + " = ?", new String[]{record.getStoragePath()});
+                else
+                    db.insertWithOnConflict(TABLE_HISTORY, null, toValues(owner, record), SQLiteDatabase.CONFLICT_REPLACE);
+            }
+
+            ContentValues state = new ContentValues();
+            state.put(COLUMN_OWNER, owner);
+            state.put(COLUMN_SYNCED_UNTIL, syncedUntil);
+            db.insertWithOnConflict(TABLE_SYNC_STATE, null, state, SQLiteDatabase.CONFLICT_REPLACE);
+
+            db.setTransactionSuccessful();
+        }
+
+        finally
+        {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Removes the user's local records taken up to the given time, together with their search index entries,
+     * in one statement. The sync cursor is kept: tombstones written by the clear get new server update times,
+     * so the next sync still fetches them, and applying them only deletes records that are already gone.
+     *
+     * @param owner       The email of the user
+     * @param untilMillis The time up to which records are removed, inclusive
+     */
+    public synchronized void clear(String owner, long untilMillis)
+    {
+        getWritableDatabase().delete(TABLE_HISTORY, COLUMN_OWNER + " = ? AND " + COLUMN_TIMESTAMP + " <= ?",
+                new String[]{owner, String.valueOf(untilMillis)});
+    }
+
+    /**
+     * Returns the server time up to which the user's records have been synced.
+     *
+     * @param owner The email of the user
+     * @return The sync cursor in milliseconds, or 0 if the user was never synced
+     */
+    public synchronized long getSyncedUntil(String owner)
+    {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SYNC_STATE, new String[]{COLUMN_SYNCED_UNTIL},
+                COLUMN_OWNER + " = ?", new String[]{owner}, null, null, null))
+        {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * Loads a page of the user's records, newest first.
+     * Pages continue after the last record shown instead of skipping a number of rows,
+     * so records inserted while the user scrolls neither repeat nor hide rows of the next page.
+     *
+     * @param owner The email of the user
+     * @param after The last record of the previous page, or null for the first page
+     * @param limit The maximum number of records to return
+     * @return The records of the page
+     */
+    public synchronized List<CaptureRecord> loadPage(String owner, CaptureRecord after, int limit)
+    {
+        List<String> args = new ArrayList<>();
+        args.add(owner);
+
+        return loadPage(COLUMN_OWNER + " = ?", args, after, limit);
+    }
+
+    /**
+     * Loads a page of the user's records matching a search, newest first.
+     * Words are looked up in the full-text index and the time range uses the owner and timestamp index,
+     * so a search stays fast with thousands of records.
+     *
+     * @param owner The email of the user
+     * @param query The parsed search
+     * @param after The last matching record of the previous page, or null for the first page
+     * @param limit The maximum number of records to return
+     * @return The matching records of the page
+     */
+    public synchronized List<CaptureRecord> search(String owner, HistoryQuery query, CaptureRecord after, int limit)
+    {
+        List<String> args = new ArrayList<>();
+
+        String selection = COLUMN_OWNER + " = ? AND " + COLUMN_TIMESTAMP + " >= ? AND " + COLUMN_TIMESTAMP + " < ?";
+        args.add(owner);
+        args.add(String.valueOf(query.getFromMillis()));
+        args.add(String.valueOf(query.getUntilMillis()));
+
+        if (query.hasTerms())
+        {
+            selection += " AND " + COLUMN_ID + " IN (SELECT docid FROM " + TABLE_SEARCH + " WHERE " + TABLE_SEARCH + " MATCH ?)";
+            args.add(query.toMatchExpression(COLUMN_LOCATION));
+        }
+
+        return loadPage(selection, args, after, limit);
+    }
+
+    /**
+     * Loads the page of records matching a selection that follows the given record in PAGE_ORDER.
+     *
+     * @param selection The WHERE clause of the records
+     * @param args      The arguments of the selection, extended with those of the page position
+     * @param after     The last record of the previous page, or null for the first page
+     * @param limit     The maximum number of records to return
+     * @return The records of the page
+     */
+    private List<CaptureRecord> loadPage(String selection, List<String> args, CaptureRecord after, int limit)
+    {
+        List<CaptureRecord> records = new ArrayList<>();
+
+        if (after != null)
+        {
+            selection += " AND (" + COLUMN_TIMESTAMP + " < ? OR (" + COLUMN_TIMESTAMP + " = ? AND " + COLUMN_STORAGE_PATH + " < ?))";
+            args.add(String.valueOf(after.getTimestamp()));
+            args.add(String.valueOf(after.getTimestamp()));
+            args.add(after.getStoragePath());
+        }
+
+        try (Cursor cursor = getReadableDatabase().query(TABLE_HISTORY, null,
+                selection, args.toArray(new String[0]), null, null,
+                PAGE_ORDER, String.valueOf(limit)))
+        {
+            while (cursor.moveToNext())
+                records.add(fromCursor(cursor));
+        }
+
+        return records;
+    }
+
+    /**
+     * Converts a record into the column values of its row.
+     *
+     * @param owner  The email of the user owning the record
+     * @param record The record
+     * @return The column values
+     */
+    private static ContentValues toValues(String owner, CaptureRecord record)
+    {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_STORAGE_PATH, record.getStoragePath());
+        values.put(COLUMN_OWNER, owner);
+        values.put(COLUMN_LABEL, record.getLabel());
+        values.put(COLUMN_LABELS, record.getLabels());
+        values.put(COLUMN_REGIONS, record.getRegions());
+        // Records written before the top labels were kept only have their best label
+        String labelTerms = (LabelResult.textsOf(record.getLabels()) + " " + LabeledRegion.textsOf(record.getRegions())).trim();
+        values.put(COLUMN_LABEL_TERMS, labelTerms.isEmpty() ? record.getLabel() : labelTerms);
+        values.put(COLUMN_LOCATION, record.getLocation());
+        values.put(COLUMN_TIMESTAMP, record.getTimestamp());
+        values.put(COLUMN_URL, record.getUrl());
+        values.put(COLUMN_THUMBNAIL_URL, record.getThumbnailUrl());
+        values.put(COLUMN_GENERATION, record.getGeneration());
+        values.put(COLUMN_THUMBNAIL_GENERATION, record.getThumbnailGeneration());
+        values.put(COLUMN_WIDTH, record.getWidth());
+        values.put(COLUMN_HEIGHT, record.getHeight());
+        return values;
+    }
+
+    /**
+     * Reads the record at the current cursor position.
+     *
+     * @param cursor A cursor over the history table
+     * @return The record
+     */
+    private static CaptureRecord fromCursor(Cursor cursor)
+    {
+        CaptureRecord record = new CaptureRecord(
+                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LABEL)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LOCATION)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_TIMESTAMP)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_STORAGE_PATH)),
+                cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_URL)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_WIDTH)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_HEIGHT)));
+        record.setLabels(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LABELS)));
+        record.setRegions(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_REGIONS)));
+        record.setThumbnailUrl(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_THUMBNAIL_URL)));
+        record.setGeneration(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_GENERATION)));
+        record.setThumbnailGeneration(cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_THUMBNAIL_GENERATION)));
+        return record;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.findit;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HistorySync reconciles the local HistoryStore with the user's Firestore capture index.
+ * Only records changed since the last sync are fetched, ordered by their server update time,
+ * and applied as inserts, updates or deletes (tombstones) together with the new sync cursor.
+ */
+public final class HistorySync
+{
+    private static final int BATCH_SIZE = 100; // Number of changed records fetched per query
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(); // Runs syncs one at a time
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper()); // Delivers results on the main thread
+
+    /**
+     * Interface for receiving the result of a sync.
+     */
+    public interface Callback
+    {
+        /**
+         * Called on the main thread once the sync has finished.
+         *
+         * @param changed true if any local record was inserted, updated or deleted
+         * @param error   The error that stopped the sync, or null if it completed
+         */
+        void onSyncFinished(boolean changed, Exception error);
+    }
+
+    private HistorySync()
+    {
+    }
+
+    /**
+     * Fetches the records changed since the last sync and applies them to the local store.
+     *
+     * @param context  Any context
+     * @param email    The email of the user to sync
+     * @param callback Receives the result on the main thread
+     */
+    public static void sync(Context context, String email, Callback callback)
+    {
+        HistoryStore store = HistoryStore.getInstance(context);
+
+        executor.execute(() -> {
+            boolean changed = false;
+            Exception error = null;
+
+            try
+            {
+                long syncedUntil = store.getSyncedUntil(email);
+
+                // Records stamped exactly at the cursor are fetched again, applying them twice is harmless
+                Query query = CaptureRecord.collection(email)
+                        .whereGreaterThanOrEqualTo(CaptureRecord.FIELD_UPDATED_AT, new Date(syncedUntil))
+                        .orderBy(CaptureRecord.FIELD_UPDATED_AT)
+                        .limit(BATCH_SIZE);
+
+                while (true)
+                {
+                    List<DocumentSnapshot> documents = Tasks.await(query.get()).getDocuments();
+                    List<CaptureRecord> changes = new ArrayList<>();
+                    long until = syncedUntil;
+
+                    for (DocumentSnapshot document : documents)
+                    {
+                        CaptureRecord record = document.toObject(CaptureRecord.class);
+                        if (record == null || record.getStoragePath() == null || record.getUpdatedAt() == null)
+                            continue;
+
+                        long updatedAt = record.getUpdatedAt().getTime();
+                        if (updatedAt > syncedUntil)
+                            changed = true;
+
+                        until = Math.max(until, updatedAt);
+                        changes.add(record);
+                    }
+
+                    store.applyChanges(email, changes, until);
+                    syncedUntil = until;
+
+                    if (documents.size() < BATCH_SIZE)
+                        break;
+
+                    query = query.startAfter(documents.get(documents.size() - 1));
+                }
+            }
+
+            catch (Exception e)
+            {
+                error = e;
+            }
+
+            boolean result = changed;
+            Exception failure = error;
+            mainHandler.post(() -> callback.onSyncFinished(result, failure));
+        });
+    }
+}
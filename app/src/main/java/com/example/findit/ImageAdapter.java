@@ -1,24 +1,28 @@
 package com.example.findit;
 
 import android.content.Context;
+import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
 
 import java.util.List;
 
-public class ImageAdapter extends ArrayAdapter<ImageData>
+public class ImageAdapter extends RecyclerView.Adapter<ImageAdapter.ViewHolder>
 {
     private final Context context;
-    private final List<ImageData> images;
+    private final int thumbnailSize; // Size in pixels of the row image view, which thumbnails are decoded at
+    private final AsyncListDiffer<ImageData> differ;
     private final OnImageClickListener onImageClickListener;
 
     /**
@@ -26,55 +30,167 @@ public class ImageAdapter extends ArrayAdapter<ImageData>
      */
     public interface OnImageClickListener
     {
-        void onImageClick(String imageUrl);
+        void onImageClick(ImageData imageData);
     }
 
+    /**
+     * Compares history rows by their storage path and contents, so list updates only re-bind rows that changed.
+     */
+    private static final DiffUtil.ItemCallback<ImageData> DIFF_CALLBACK = new DiffUtil.ItemCallback<ImageData>()
+    {
+        @Override
+        public boolean areItemsTheSame(@NonNull ImageData oldItem, @NonNull ImageData newItem)
+        {
+            return oldItem.getStoragePath().equals(newItem.getStoragePath());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ImageData oldItem, @NonNull ImageData newItem)
+        {
+            return oldItem.equals(newItem);
+        }
+    };
+
     /**
      * Constructor for ImageAdapter.
      *
      * @param context The context of the calling activity.
-     * @param images The list of ImageData objects to be displayed.
      * @param onImageClickListener The listener for image click events.
      */
-    public ImageAdapter(@NonNull Context context, @NonNull List<ImageData> images, OnImageClickListener onImageClickListener)
+    public ImageAdapter(@NonNull Context context, OnImageClickListener onImageClickListener)
     {
-        super(context, 0, images);
         this.context = context;
-        this.images = images;
+        this.differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
         this.onImageClickListener = onImageClickListener;
+        this.thumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.history_thumbnail_size);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Replace the displayed list. The difference to the current list is computed on a background thread,
+     * and only the changed rows are re-bound.
+     *
+     * @param images The new list of ImageData objects, which must not be modified afterwards.
+     */
+    public void submitList(List<ImageData> images)
+    {
+        differ.submitList(images);
+    }
+
+    /**
+     * Replace the displayed list and run a callback once the new list is displayed.
+     *
+     * @param images         The new list of ImageData objects, which must not be modified afterwards.
+     * @param commitCallback Runs on the main thread once the list is committed.
+     */
+    public void submitList(List<ImageData> images, Runnable commitCallback)
+    {
+        differ.submitList(images, commitCallback);
+    }
+
+    /**
+     * Returns the list currently displayed.
+     *
+     * @return The displayed list of ImageData objects.
+     */
+    public List<ImageData> getCurrentList()
+    {
+        return differ.getCurrentList();
     }
 
     @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent)
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType)
     {
-        if (convertView == null)
-        {
-            convertView = LayoutInflater.from(context).inflate(R.layout.item_image, parent, false);
-        }
+        View view = LayoutInflater.from(context).inflate(R.layout.item_image, parent, false);
+        return new ViewHolder(view);
+    }
 
-        ImageData imageData = images.get(position);
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position)
+    {
+        ImageData imageData = differ.getCurrentList().get(position);
 
-        TextView nameTextView = convertView.findViewById(R.id.txtImgNameID);
-        TextView locationTextView = convertView.findViewById(R.id.txtImgLocationID);
-        TextView dateTextView = convertView.findViewById(R.id.txtImgDateID);
-        ImageView imageView = convertView.findViewById(R.id.imageView);
+        holder.nameTextView.setText(imageData.getName());
+        holder.locationTextView.setText(imageData.getLocation());
+        holder.dateTextView.setText(imageData.getCreationDate());
 
-        nameTextView.setText(imageData.getName());
-        locationTextView.setText(imageData.getLocation());
-        dateTextView.setText(imageData.getCreationDate());
+        // Rows show the thumbnail, only the full screen view loads the original
+        thumbnailRequest(imageData).into(holder.imageView);
+    }
+
+    /**
+     * Build the request of a row thumbnail. Rows and the prefetcher use the same request,
+     * so prefetched thumbnails are found in the memory cache when their row is bound.
+     *
+     * @param imageData The row to load the thumbnail of.
+     * @return The request loading the thumbnail at the row image size.
+     */
+    @NonNull
+    public RequestBuilder<Drawable> thumbnailRequest(@NonNull ImageData imageData)
+    {
+        return Glide.with(context)
+                .load(StorageGlideUrl.thumbnailOf(imageData))
+                .override(thumbnailSize)
+                .centerCrop();
+    }
 
-        String imageUrl = imageData.getImageUrl();
-        Glide.with(context).load(imageUrl).into(imageView);
+    @Override
+    public int getItemCount()
+    {
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position)
+    {
+        return stableId(differ.getCurrentList().get(position).getStoragePath());
+    }
 
-        imageView.setOnClickListener(v ->
+    /**
+     * Derive a stable 64-bit row ID from a storage path (FNV-1a hash).
+     *
+     * @param storagePath The storage path of the image.
+     * @return The row ID.
+     */
+    private static long stableId(String storagePath)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < storagePath.length(); i++)
         {
-            if (onImageClickListener != null)
-            {
-                onImageClickListener.onImageClick(imageUrl);
-            }
-        });
+            hash ^= storagePath.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
 
-        return convertView;
+    /**
+     * ViewHolder caching the views of a history row. The click listener is set once and reads the bound row.
+     */
+    class ViewHolder extends RecyclerView.ViewHolder
+    {
+        private final TextView nameTextView;
+        private final TextView locationTextView;
+        private final TextView dateTextView;
+        private final ImageView imageView;
+
+        ViewHolder(@NonNull View itemView)
+        {
+            super(itemView);
+            nameTextView = itemView.findViewById(R.id.txtImgNameID);
+            locationTextView = itemView.findViewById(R.id.txtImgLocationID);
+            dateTextView = itemView.findViewById(R.id.txtImgDateID);
+            imageView = itemView.findViewById(R.id.imageView);
+
+            imageView.setOnClickListener(v ->
+            {
+                int position = getBindingAdapterPosition();
+                if (onImageClickListener != null && position != RecyclerView.NO_POSITION)
+                {
+                    onImageClickListener.onImageClick(differ.getCurrentList().get(position));
+                }
+            });
+        }
     }
 }
@@ -1,8 +1,14 @@
 package com.example.findit;
 
+import java.util.Objects;
+
 public class ImageData {
+    private String storagePath;
     private String name;
     private String imageUrl;
+    private String thumbnailUrl;
+    private String generation;
+    private String thumbnailGeneration;
     private String location;
     private String creationDate;
 
@@ -10,13 +16,21 @@ public class ImageData {
         // Default constructor
     }
 
-    public ImageData(String name, String imageUrl, String location, String creationDate) {
+    public ImageData(String storagePath, String name, String imageUrl, String thumbnailUrl, String generation, String thumbnailGeneration, String location, String creationDate) {
+        this.storagePath = storagePath;
         this.name = name;
         this.imageUrl = imageUrl;
+        this.thumbnailUrl = thumbnailUrl;
+        this.generation = generation;
+        this.thumbnailGeneration = thumbnailGeneration;
         this.location = location;
         this.creationDate = creationDate;
     }
 
+    public String getStoragePath() {
+        return storagePath;
+    }
+
     public String getName() {
         return name;
     }
@@ -25,6 +39,18 @@ public class ImageData {
         return imageUrl;
     }
 
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+
+    public String getGeneration() {
+        return generation;
+    }
+
+    public String getThumbnailGeneration() {
+        return thumbnailGeneration;
+    }
+
     public String getLocation() {
         return location;
     }
@@ -32,4 +58,27 @@ public class ImageData {
     public String getCreationDate() {
         return creationDate;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof ImageData))
+            return false;
+
+        ImageData other = (ImageData) o;
+        return Objects.equals(storagePath, other.storagePath)
+                && Objects.equals(name, other.name)
+                && Objects.equals(imageUrl, other.imageUrl)
+                && Objects.equals(thumbnailUrl, other.thumbnailUrl)
+                && Objects.equals(generation, other.generation)
+                && Objects.equals(thumbnailGeneration, other.thumbnailGeneration)
+                && Objects.equals(location, other.location)
+                && Objects.equals(creationDate, other.creationDate);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(storagePath, name, imageUrl, thumbnailUrl, generation, thumbnailGeneration, location, creationDate);
+    }
 }
@@ -0,0 +1,88 @@
+package com.example.findit;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * ImageHandoff passes captured images from SearchPageActivity to LabelHandlerService by Uri.
+ * The image is either referenced by its original content Uri or by a file copied into the app cache,
+ * so no encoded image bytes travel through the Intent.
+ */
+public final class ImageHandoff
+{
+    private static final String HANDOFF_DIR = "handoff"; // Cache sub-directory holding handed-off images
+    private static final int BUFFER_SIZE = 16 * 1024; // Buffer size used when copying image streams
+
+    private ImageHandoff()
+    {
+    }
+
+    /**
+     * Copies the image behind the given Uri into the app cache.
+     * Used when the original image is about to be removed (e.g. the user chose not to keep camera pictures),
+     * or when the app only holds a temporary grant to read it (e.g. an image picked from the gallery).
+     *
+     * @param context The context used to resolve the Uri
+     * @param source  The Uri of the image to copy
+     * @return A file Uri pointing to the cached copy
+     * @throws IOException If the source cannot be read or the copy cannot be written
+     */
+    public static Uri copyToCache(Context context, Uri source) throws IOException
+    {
+        File dir = new File(context.getCacheDir(), HANDOFF_DIR);
+        if (!dir.exists() && !dir.mkdirs())
+            throw new IOException("Failed to create handoff directory.");
+
+        // A unique name, so two copies never share a file and a copy never overwrites its own source
+        File target = File.createTempFile("capture_", ".jpg", dir);
+
+        try (InputStream in = context.getContentResolver().openInputStream(source);
+             OutputStream out = new FileOutputStream(target))
+        {
+            if (in == null)
+                throw new IOException("Failed to open image: " + source);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+        }
+
+        return Uri.fromFile(target);
+    }
+
+    /**
+     * Checks whether the given Uri points to a handoff copy inside the app cache.
+     *
+     * @param context The context owning the cache directory
+     * @param uri     The Uri to check
+     * @return true if the Uri is a cached handoff file, false otherwise
+     */
+    public static boolean isCacheFile(Context context, Uri uri)
+    {
+        if (uri == null || !"file".equals(uri.getScheme()) || uri.getPath() == null)
+            return false;
+
+        File dir = new File(context.getCacheDir(), HANDOFF_DIR);
+        return new File(uri.getPath()).getAbsolutePath().startsWith(dir.getAbsolutePath());
+    }
+
+    /**
+     * Deletes the cached copy behind the given Uri once it is no longer needed.
+     * Content Uris owned by other apps are left untouched.
+     *
+     * @param context The context owning the cache directory
+     * @param uri     The Uri of the handed-off image
+     */
+    public static void release(Context context, Uri uri)
+    {
+        if (isCacheFile(context, uri))
+            new File(uri.getPath()).delete();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.findit;
+
+import android.graphics.Bitmap;
+
+import com.google.firebase.ml.vision.FirebaseVision;
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.ml.vision.label.FirebaseVisionImageLabeler;
+
+import java.io.IOException;
+
+/**
+ * ImageLabelerProvider holds a single on-device Firebase image labeler for the whole app process.
+ * The labeler is created and warmed up once and shared by every caller, which acquires it around each inference.
+ * LabelingEngineProvider retires it through FirebaseLabelingEngine when the system trims memory,
+ * and it is closed once the last running inference released it.
+ */
+public final class ImageLabelerProvider
+{
+    private static final int WARM_UP_SIZE = 64; // Size of the blank bitmap used for the warm-up inference
+
+    private static final SharedResource<FirebaseVisionImageLabeler> labeler = new SharedResource<>(ImageLabelerProvider::close); // The shared labeler
+
+    private ImageLabelerProvider()
+    {
+    }
+
+    /**
+     * Returns the shared labeler, creating it on first use or after a retirement.
+     * Every call must be matched by a call to release() once the inference is complete.
+     *
+     * @return The shared on-device image labeler
+     */
+    public static FirebaseVisionImageLabeler acquire()
+    {
+        return labeler.acquire(() -> FirebaseVision.getInstance().getOnDeviceImageLabeler());
+    }
+
+    /**
+     * Releases a labeler returned by acquire().
+     *
+     * @param acquired The acquired labeler
+     */
+    public static void release(FirebaseVisionImageLabeler acquired)
+    {
+        labeler.release(acquired);
+    }
+
+    /**
+     * Creates the shared labeler and runs one inference on a blank bitmap,
+     * so model loading and initialization are paid before the first real search.
+     */
+    public static void warmUp()
+    {
+        Bitmap blank = Bitmap.createBitmap(WARM_UP_SIZE, WARM_UP_SIZE, Bitmap.Config.ARGB_8888);
+        FirebaseVisionImageLabeler acquired = acquire();
+        acquired.processImage(FirebaseVisionImage.fromBitmap(blank))
+                .addOnCompleteListener(task ->
+                {
+                    release(acquired);
+                    blank.recycle();
+                });
+    }
+
+    /**
+     * Retires the shared labeler. It is closed once no inference uses it, and the next call to acquire() creates a new one.
+     */
+    public static void retire()
+    {
+        labeler.retire();
+    }
+
+    /**
+     * Closes a retired labeler that is no longer used.
+     *
+     * @param retired The labeler to close
+     */
+    private static void close(FirebaseVisionImageLabeler retired)
+    {
+        try
+        {
+            retired.close();
+        }
+
+        catch (IOException e)
+        {
+            // The labeler is dropped either way
+        }
+    }
+}
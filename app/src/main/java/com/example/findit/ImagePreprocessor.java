@@ -0,0 +1,116 @@
+package com.example.findit;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * ImagePreprocessor turns a decoded image into the input of a labeling model:
+ * it scales the whole image to cover the model's input size and crops the center, or fits a detected object
+ * into the input size with black bars, in a single draw into a scratch bitmap taken from the BitmapPool,
+ * so steady-state labeling allocates no large bitmaps.
+ * An image that already has the model's input size, such as a preprocessed region, is passed through as is.
+ */
+public final class ImagePreprocessor
+{
+    private static final Paint FILTER_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG); // Bilinear filtering, only read while drawing
+
+    private ImagePreprocessor()
+    {
+    }
+
+    /**
+     * Scales the source to cover the given size and crops its center into a pooled bitmap.
+     * The caller must return the result with BitmapPool.release() once the model has read it.
+     *
+     * @param source The decoded image, left untouched
+     * @param width  The input width of the model
+     * @param height The input height of the model
+     * @return The preprocessed image, of exactly the given size
+     */
+    public static Bitmap centerCrop(Bitmap source, int width, int height)
+    {
+        Rect whole = new Rect(0, 0, source.getWidth(), source.getHeight());
+        float scale = Math.max((float) width / whole.width(), (float) height / whole.height());
+        return draw(source, whole, scale, width, height);
+    }
+
+    /**
+     * Returns the model input for an image: the image itself if it already has the input size,
+     * otherwise its center crop. Pass the result to releaseInput() once the model has read it.
+     *
+     * @param source The image to label, left untouched
+     * @param width  The input width of the model
+     * @param height The input height of the model
+     * @return The model input, of exactly the given size
+     */
+    public static Bitmap toInput(Bitmap source, int width, int height)
+    {
+        if (source.getWidth() == width && source.getHeight() == height)
+            return source;
+
+        return centerCrop(source, width, height);
+    }
+
+    /**
+     * Returns a model input taken by toInput() to the BitmapPool, unless it is the caller's own image.
+     *
+     * @param input  The model input
+     * @param source The image it was made from
+     */
+    public static void releaseInput(Bitmap input, Bitmap source)
+    {
+        if (input != source)
+            BitmapPool.release(input);
+    }
+
+    /**
+     * Scales a region of the source to fit the given size, centered between black bars, into a pooled bitmap.
+     * The whole region stays visible, so long or tall objects keep their extent instead of losing their ends.
+     * The pixels are drawn straight from the shared source, which is only read, so several regions of one image
+     * can be cropped at the same time without copying it.
+     * The caller must return the result with BitmapPool.release() once the model has read it.
+     *
+     * @param source The decoded image, left untouched
+     * @param region The region of the source to crop, in source pixels
+     * @param width  The input width of the model
+     * @param height The input height of the model
+     * @return The preprocessed region, of exactly the given size
+     */
+    public static Bitmap cropRegion(Bitmap source, Rect region, int width, int height)
+    {
+        float scale = Math.min((float) width / region.width(), (float) height / region.height());
+        return draw(source, region, scale, width, height);
+    }
+
+    /**
+     * Draws a region of the source, scaled around its center, into the center of a black pooled bitmap.
+     *
+     * @param source The decoded image, left untouched
+     * @param region The region of the source to draw, in source pixels
+     * @param scale  The scale applied to the region
+     * @param width  The width of the result
+     * @param height The height of the result
+     * @return The pooled bitmap, of exactly the given size
+     */
+    private static Bitmap draw(Bitmap source, Rect region, float scale, int width, int height)
+    {
+        Matrix matrix = new Matrix();
+        matrix.setTranslate(-region.exactCenterX(), -region.exactCenterY());
+        matrix.postScale(scale, scale);
+        matrix.postTranslate(width / 2f, height / 2f);
+
+        Bitmap result = BitmapPool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(result);
+        canvas.drawColor(Color.BLACK);
+        canvas.save();
+        canvas.concat(matrix);
+        canvas.clipRect(region);
+        canvas.drawBitmap(source, 0, 0, FILTER_PAINT);
+        canvas.restore();
+        return result;
+    }
+}
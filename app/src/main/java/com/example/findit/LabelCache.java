@@ -0,0 +1,298 @@
+package com.example.findit;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LabelCache remembers the labels found for recently searched images, keyed by a perceptual hash (dHash) of the image.
+ * Labels are stored in the compact form of LabelResult.encode(), with their confidences.
+ * A lookup returns the stored labels of any cached image whose hash is within a small Hamming distance,
+ * so searching the same or a nearly identical photo again skips inference.
+ * Entries are scoped to the LabelingEngine that produced them, so switching engines never returns another engine's labels.
+ * Entries are kept in an LRU order in memory and persisted to disk shortly after the last change,
+ * so a burst of searches writes the file once.
+ */
+public final class LabelCache
+{
+    private static final String CACHE_FILE = "label_cache.tsv"; // File holding the persisted cache, one "engine<TAB>hash<TAB>labels" per line
+    private static final int MAX_ENTRIES = 256; // Maximum number of cached images
+    private static final int MAX_HAMMING_DISTANCE = 6; // Hashes differing in at most this many bits are near-duplicates
+    private static final int HASH_WIDTH = 9; // Width of the grayscale thumbnail, one more than the compared columns
+    private static final int HASH_HEIGHT = 8; // Height of the grayscale thumbnail
+    private static final long SAVE_DELAY_MILLIS = 2000; // Delay after a change before the cache is written, so bursts are written once
+
+    private static LabelCache instance; // The shared instance
+
+    private final File file;
+    private final ScheduledExecutorService saveExecutor = Executors.newSingleThreadScheduledExecutor(); // Writes the cache off the callers' threads
+    private final Map<Key, String> entries = new LinkedHashMap<Key, String>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, String> eldest)
+        {
+            return size() > MAX_ENTRIES;
+        }
+    }; // Access-ordered LRU map of engine and image hash to labels
+    private boolean loaded; // Whether the cache has been read from disk
+    private boolean saveScheduled; // Whether a write of the cache is pending
+
+    private LabelCache(Context context)
+    {
+        file = new File(context.getApplicationContext().getFilesDir(), CACHE_FILE);
+    }
+
+    /**
+     * Returns the shared LabelCache.
+     *
+     * @param context Any context
+     * @return The shared instance
+     */
+    public static synchronized LabelCache getInstance(Context context)
+    {
+        if (instance == null)
+            instance = new LabelCache(context);
+
+        return instance;
+    }
+
+    /**
+     * Computes the 64-bit difference hash of a bitmap.
+     * The bitmap is shrunk to 9x8 grayscale cells, and each bit tells whether a cell is brighter than its right neighbour.
+     * Each cell is the average of every pixel it covers, read one row at a time, so the hash does not depend on
+     * which pixels a single filtered downscale happens to sample, and no scaled copy of the bitmap is made.
+     *
+     * @param bitmap The bitmap to hash
+     * @return The perceptual hash
+     */
+    public static long computeHash(Bitmap bitmap)
+    {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        long[] sums = new long[HASH_WIDTH * HASH_HEIGHT];
+        int[] counts = new int[HASH_WIDTH * HASH_HEIGHT];
+
+        int[] cellOfColumn = new int[width];
+        for (int x = 0; x < width; x++)
+            cellOfColumn[x] = x * HASH_WIDTH / width;
+
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++)
+        {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            int rowOffset = y * HASH_HEIGHT / height * HASH_WIDTH;
+            for (int x = 0; x < width; x++)
+            {
+                sums[rowOffset + cellOfColumn[x]] += luminance(row[x]);
+                counts[rowOffset + cellOfColumn[x]]++;
+            }
+        }
+
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++)
+        {
+            for (int x = 0; x < HASH_WIDTH - 1; x++)
+            {
+                hash <<= 1;
+                if (average(sums, counts, y * HASH_WIDTH + x) > average(sums, counts, y * HASH_WIDTH + x + 1))
+                    hash |= 1;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Returns the labels the given engine found for the closest cached image within the Hamming threshold.
+     *
+     * @param engine The name of the engine labeling the searched image
+     * @param hash   The perceptual hash of the searched image
+     * @return The cached labels, or null if no near-duplicate labeled by the engine is cached
+     */
+    public synchronized String get(String engine, long hash)
+    {
+        loadIfNeeded();
+
+        Key bestKey = null;
+        int bestDistance = MAX_HAMMING_DISTANCE + 1;
+
+        for (Key key : entries.keySet())
+        {
+            if (!key.engine.equals(engine))
+                continue;
+
+            int distance = Long.bitCount(key.hash ^ hash);
+            if (distance < bestDistance)
+            {
+                bestDistance = distance;
+                bestKey = key;
+            }
+        }
+
+        // get() also marks the entry as most recently used
+        return bestKey != null ? entries.get(bestKey) : null;
+    }
+
+    /**
+     * Stores the labels an engine found for an image and schedules a write of the cache.
+     *
+     * @param engine The name of the engine that labeled the image
+     * @param hash   The perceptual hash of the image
+     * @param labels The labels found in the image
+     */
+    public synchronized void put(String engine, long hash, String labels)
+    {
+        loadIfNeeded();
+        entries.put(new Key(engine, hash), labels);
+
+        if (!saveScheduled)
+        {
+            saveScheduled = true;
+            saveExecutor.schedule(this::save, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the average luminance of a hash cell.
+     *
+     * @param sums   The summed luminance of each cell
+     * @param counts The number of pixels in each cell
+     * @param cell   The index of the cell
+     * @return The average luminance, or 0 for a cell covering no pixel
+     */
+    private static long average(long[] sums, int[] counts, int cell)
+    {
+        return counts[cell] > 0 ? sums[cell] / counts[cell] : 0;
+    }
+
+    /**
+     * Returns the perceived brightness of a pixel.
+     *
+     * @param color The ARGB color of the pixel
+     * @return The luminance, from 0 to 255
+     */
+    private static int luminance(int color)
+    {
+        return (Color.red(color) * 299 + Color.green(color) * 587 + Color.blue(color) * 114) / 1000;
+    }
+
+    /**
+     * Reads the persisted cache on first use.
+     */
+    private void loadIfNeeded()
+    {
+        if (loaded)
+            return;
+
+        loaded = true;
+        if (!file.exists())
+            return;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                int first = line.indexOf('\t');
+                int second = line.indexOf('\t', first + 1);
+                if (first > 0 && second > first + 1)
+                    entries.put(new Key(line.substring(0, first), Long.parseUnsignedLong(line.substring(first + 1, second), 16)), line.substring(second + 1));
+            }
+        }
+
+        catch (IOException | NumberFormatException e)
+        {
+            // A damaged cache is simply rebuilt
+            entries.clear();
+        }
+    }
+
+    /**
+     * Writes the cache to disk, least recently used entries first so the order survives a reload.
+     * Runs on the save executor. Only the snapshot of the entries is taken under the lock, the file is written outside it.
+     */
+    private void save()
+    {
+        List<Map.Entry<Key, String>> snapshot;
+        synchronized (this)
+        {
+            saveScheduled = false;
+            snapshot = new ArrayList<>(entries.size());
+            for (Map.Entry<Key, String> entry : entries.entrySet())
+                snapshot.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)))
+        {
+            for (Map.Entry<Key, String> entry : snapshot)
+            {
+                writer.write(entry.getKey().engine);
+                writer.write('\t');
+                writer.write(Long.toHexString(entry.getKey().hash));
+                writer.write('\t');
+                writer.write(entry.getValue().replace('\n', ' ').replace('\t', ' '));
+                writer.newLine();
+            }
+        }
+
+        catch (IOException e)
+        {
+            temp.delete();
+            return;
+        }
+
+        temp.renameTo(file);
+    }
+
+    /**
+     * Key of a cache entry: the engine that labeled an image and the image's perceptual hash.
+     */
+    private static final class Key
+    {
+        final String engine; // Name of the engine that labeled the image
+        final long hash; // Perceptual hash of the image
+
+        Key(String engine, long hash)
+        {
+            this.engine = engine;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+
+            Key other = (Key) o;
+            return hash == other.hash && engine.equals(other.engine);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(engine, hash);
+        }
+    }
+}
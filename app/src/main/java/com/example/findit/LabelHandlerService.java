@@ -1,7 +1,6 @@
 package com.example.findit;
 
 import android.Manifest;
-import android.annotation.SuppressLint;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
@@ -10,13 +9,8 @@ import android.app.Service;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.location.Address;
-import android.location.Geocoder;
 import android.location.Location;
-import android.location.LocationListener;
-import android.location.LocationManager;
+import android.net.Uri;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
@@ -25,87 +19,286 @@ import android.widget.Toast;
 import androidx.core.app.NotificationCompat;
 import androidx.core.content.ContextCompat;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.ml.vision.FirebaseVision;
-import com.google.firebase.ml.vision.common.FirebaseVisionImage;
-import com.google.firebase.ml.vision.label.FirebaseVisionImageLabel;
-import com.google.firebase.ml.vision.label.FirebaseVisionImageLabeler;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageMetadata;
 import com.google.firebase.storage.StorageReference;
 import com.google.firebase.storage.UploadTask;
 
-import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * LabelHandlerService is a service that handles image recognition and uploading tasks.
- * It uses Firebase ML Kit for image labeling and Firebase Storage for storing images with metadata.
+ * It labels images with the LabelingEngine chosen in the preferences and uses Firebase Storage for storing images with metadata.
+ * Each uploaded image is indexed by a CaptureRecord in Firestore, which the history reads.
+ * Every search is persisted as a CaptureJob and processed on a bounded worker pool, checkpointing each stage,
+ * so pending work is resumed with backoff after failures or after the process is killed.
+ * All per-search state lives in its CaptureJob, so several searches are pipelined in parallel.
+ * Jobs that need a signed-in user while nobody is signed in are parked, and resume once the user signs in.
  */
-public class LabelHandlerService extends Service implements LocationListener {
+public class LabelHandlerService extends Service {
 
-    public static final String EXTRA_IMAGE = "com.example.findit.EXTRA_IMAGE"; // Key for passing image data through Intent
     private static final String CHANNEL_ID = "recognizeImageChannel"; // Notification channel ID
     private static final String CHANNEL_NAME = "Image Recognition Channel"; // Notification channel name
     private static final String PREFS_NAME = "FindItPrefs"; // SharedPreferences file name
     private static final String KEY_TOAST_SHOWN = "locationPermissionToastShown"; // Key for tracking if the toast has been shown
-    private Bitmap imageBitmap; // Bitmap of the image to be processed
-    private LocationManager locationManager; // LocationManager for accessing device location
-    private String locationString = "Location not available."; // String to hold the location information
-    private String bestLabel; // Best label found in image recognition
+    private static final String LOCATION_NOT_AVAILABLE = "Location not available."; // Location used when none can be found
+    private static final int MAX_CONCURRENT_JOBS = 3; // Number of jobs processed in parallel
+    private static final int MAX_ATTEMPTS = 5; // Attempts before a failing job is abandoned
+    private static final long BASE_BACKOFF_MILLIS = 5000; // Delay before the first retry, doubled on each further attempt
+    private static final int THUMBNAIL_SIZE = 320; // Long edge of the thumbnail shown in history rows
+    private static final long GEOCODE_TIMEOUT_MILLIS = 5000; // Wait for an address before the coordinates are used instead
+    public static final String KEY_LABEL_COUNT = "label_count"; // Preference key of the number of labels kept per capture
+    public static final String KEY_LABEL_MIN_CONFIDENCE = "label_min_confidence"; // Preference key of the confidence a kept label needs
+    public static final String KEY_DETECTION_MODE = "detection_mode_enabled"; // Preference key of the multi-object detection mode
+    private static final int DEFAULT_LABEL_COUNT = 5; // Labels kept per capture unless configured
+    private static final float DEFAULT_LABEL_MIN_CONFIDENCE = 0.3f; // Confidence a kept label needs unless configured
+    private LocationProvider locationProvider; // Finds the device location within a bounded time
+    private final Set<LocationProvider.Request> activeLocationRequests = Collections.newSetFromMap(new ConcurrentHashMap<>()); // Location lookups of running jobs
     private Handler handler; // Handler to post tasks to the main thread
+    private CaptureJobStore jobStore; // Persistent queue of pending jobs
+    private ExecutorService jobExecutor; // Bounded worker pool running the jobs
+    private final Set<Long> scheduledJobIds = new HashSet<>(); // IDs of jobs queued or running, only accessed on the main thread
+    private final Set<Long> parkedJobIds = new HashSet<>(); // IDs of jobs waiting for the user to sign in, only accessed on the main thread
+    private FirebaseAuth.AuthStateListener authStateListener; // Resumes the parked jobs once the user signs in
 
     @Override
     public void onCreate() {
         super.onCreate();
         handler = new Handler(Looper.getMainLooper()); // Initialize handler for main thread tasks
+        jobStore = new CaptureJobStore(this);
+        jobExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_JOBS);
+        locationProvider = new LocationProvider(this);
+        createNotificationChannel();
+
+        // Called on the main thread, also once the session is restored after a cold start
+        authStateListener = auth ->
+        {
+            if (auth.getCurrentUser() != null && !parkedJobIds.isEmpty())
+            {
+                parkedJobIds.clear();
+                schedulePendingJobs();
+            }
+        };
+        FirebaseAuth.getInstance().addAuthStateListener(authStateListener);
     }
 
     /**
      * Handles the service start command.
-     * Processes the image and recognizes labels using Firebase ML Kit.
+     * Queues the image passed by Uri (a content Uri or a file in the app cache) as the Intent data,
+     * then schedules every pending job, including jobs left over from a previous process.
      *
-     * @param intent  Intent containing the image data
+     * @param intent  Intent containing the image Uri, or null when the service is restarted after being killed
      * @param flags   Flags for the start request
      * @param startId Start ID for the request
-     * @return START_NOT_STICKY to indicate that the service should not be recreated if it is killed
+     * @return START_STICKY so the service is recreated and resumes pending jobs if it is killed
      */
     @Override
     public int onStartCommand(Intent intent, int flags, int startId)
     {
-        if (intent != null && intent.hasExtra(EXTRA_IMAGE))
+        if (intent != null && intent.getData() != null)
+            jobStore.insert(intent.getData());
+
+        schedulePendingJobs();
+        return START_STICKY;
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        super.onDestroy();
+        handler.removeCallbacksAndMessages(null);
+        FirebaseAuth.getInstance().removeAuthStateListener(authStateListener);
+        jobExecutor.shutdownNow();
+        for (LocationProvider.Request request : activeLocationRequests)
+            request.cancel();
+        jobStore.close();
+    }
+
+    /**
+     * Schedules every pending job that is not already queued, running or parked until the user signs in.
+     * Jobs waiting for a retry are scheduled after their backoff delay.
+     * Stops the service when nothing is left, while parked jobs keep it waiting for the sign-in.
+     */
+    private void schedulePendingJobs()
+    {
+        long now = System.currentTimeMillis();
+
+        for (CaptureJob job : jobStore.loadPending())
+        {
+            if (!parkedJobIds.contains(job.getId()) && scheduledJobIds.add(job.getId()))
+                handler.postDelayed(() -> jobExecutor.execute(() -> runJob(job)), Math.max(0, job.getNextAttemptAt() - now));
+        }
+
+        if (scheduledJobIds.isEmpty() && parkedJobIds.isEmpty())
+            stopSelf();
+    }
+
+    /**
+     * Called on the main thread once a job has finished, failed or been rescheduled.
+     *
+     * @param job    The job that completed its run
+     * @param retry  true if the job should be scheduled again after its backoff delay
+     * @param parked true if the job stays queued until the user signs in
+     */
+    private void onJobRunFinished(CaptureJob job, boolean retry, boolean parked)
+    {
+        scheduledJobIds.remove(job.getId());
+
+        // The user may have signed in while the job was running
+        if (parked && FirebaseAuth.getInstance().getCurrentUser() == null)
+            parkedJobIds.add(job.getId());
+        else if (parked)
+            retry = true;
+
+        if (retry)
+        {
+            scheduledJobIds.add(job.getId());
+            handler.postDelayed(() -> jobExecutor.execute(() -> runJob(job)),
+                    Math.max(0, job.getNextAttemptAt() - System.currentTimeMillis()));
+        }
+
+        else if (scheduledJobIds.isEmpty())
+            schedulePendingJobs();
+    }
+
+    /**
+     * Runs a job on a worker thread, resuming from the last stage it reached.
+     * The location is requested before labeling starts, so both run at the same time and are joined before upload.
+     * Each stage is checkpointed in the job store before moving to the next one.
+     *
+     * @param job The job to run
+     */
+    private void runJob(CaptureJob job)
+    {
+        boolean retry = false;
+        boolean parked = false;
+        LocationProvider.Request locationRequest = null;
+
+        try
         {
-            byte[] byteArray = intent.getByteArrayExtra(EXTRA_IMAGE);
-            if (byteArray != null)
+            if (job.getStage() < CaptureJob.STAGE_LOCATED)
+            {
+                if (isPermissionGranted(Manifest.permission.ACCESS_FINE_LOCATION))
+                    locationRequest = startLocationRequest();
+                else
+                    showLocationPermissionDeniedToastOnce();
+            }
+
+            if (job.getStage() < CaptureJob.STAGE_LABELED)
             {
-                imageBitmap = BitmapFactory.decodeByteArray(byteArray, 0, byteArray.length);
-                createNotificationChannel();
-                recognizeImage(() -> {
-                    if (isPermissionGranted(Manifest.permission.ACCESS_FINE_LOCATION))
-                        requestSingleLocationUpdate();
-                    else
-                    {
-                        showLocationPermissionDeniedToastOnce();
-                        uploadImageToStorage(bestLabel, locationString);
-                    }
-                });
+                recognizeImage(job);
+                job.setStage(CaptureJob.STAGE_LABELED);
+                jobStore.checkpoint(job);
             }
 
-            else
+            if (job.getStage() < CaptureJob.STAGE_LOCATED)
             {
-                handler.post(() -> Toast.makeText(this, "Failed to load image data.", Toast.LENGTH_SHORT).show());
-                stopSelf();
+                String location = locationRequest != null ? awaitLocation(locationRequest) : LOCATION_NOT_AVAILABLE;
+
+                job.setLocation(location);
+                job.setStage(CaptureJob.STAGE_LOCATED);
+                jobStore.checkpoint(job);
             }
+
+            if (job.getStage() < CaptureJob.STAGE_UPLOADED)
+            {
+                uploadImageToStorage(job);
+                job.setStage(CaptureJob.STAGE_UPLOADED);
+                jobStore.checkpoint(job);
+            }
+
+            indexCapture(job);
+            job.setStage(CaptureJob.STAGE_INDEXED);
+            finishJob(job);
         }
 
-        else
-            stopSelf();
+        catch (FileNotFoundException | SecurityException e)
+        {
+            // The image no longer exists or can no longer be read, retrying cannot help
+            handler.post(() -> Toast.makeText(this, "Failed to load image data.", Toast.LENGTH_SHORT).show());
+            finishJob(job);
+        }
+
+        catch (NotAuthenticatedException e)
+        {
+            // Nobody is signed in yet, the job keeps its progress and waits for a sign-in without using up its attempts
+            handler.post(() -> Toast.makeText(this, "Sign in to finish saving your search.", Toast.LENGTH_SHORT).show());
+            parked = true;
+        }
+
+        catch (InterruptedException e)
+        {
+            // The service is shutting down, the job stays queued and resumes on the next start
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        catch (Exception e)
+        {
+            retry = scheduleRetry(job);
+        }
+
+        finally
+        {
+            if (locationRequest != null)
+                stopLocationRequest(locationRequest);
+            job.releaseImageBitmap();
+        }
 
+        boolean scheduleAgain = retry;
+        boolean waitForSignIn = parked;
+        handler.post(() -> onJobRunFinished(job, scheduleAgain, waitForSignIn));
+    }
+
+    /**
+     * Records a failed attempt and computes the exponential backoff before the next one.
+     * Abandons the job once it has failed MAX_ATTEMPTS times.
+     *
+     * @param job The job that failed
+     * @return true if the job should be retried, false if it was abandoned
+     */
+    private boolean scheduleRetry(CaptureJob job)
+    {
+        int attempts = job.getAttempts() + 1;
+        job.setAttempts(attempts);
+
+        if (attempts >= MAX_ATTEMPTS)
+        {
+            sendNotification("FindIt Result", "Failed to save the search.");
+            finishJob(job);
+            return false;
+        }
+
+        job.setNextAttemptAt(System.currentTimeMillis() + (BASE_BACKOFF_MILLIS << (attempts - 1)));
+        jobStore.recordFailure(job);
+        return true;
+    }
 
-        return START_NOT_STICKY;
+    /**
+     * Removes a job from the queue and deletes its cached image, if any.
+     *
+     * @param job The finished or abandoned job
+     */
+    private void finishJob(CaptureJob job)
+    {
+        jobStore.delete(job);
+        ImageHandoff.release(this, job.getImageUri());
     }
 
     /**
@@ -159,172 +352,279 @@ public class LabelHandlerService extends Service implements LocationListener {
     }
 
     /**
-     * Recognizes labels in the image using Firebase ML Kit.
+     * Decodes the image from its Uri and recognizes labels in it using the configured LabelingEngine.
+     * The most confident labels above the configured threshold are kept on the job with their confidences,
+     * and the best of them becomes the job's label.
+     * In detection mode the objects in the image are labeled one by one, and the job keeps every labeled region
+     * together with the best labels across all of them.
+     * Near-duplicates of recently searched images are answered from the LabelCache without running inference,
+     * as long as the same engine labeled them, except in detection mode, as the cache holds no regions.
+     * Blocks the calling worker thread until recognition is complete.
      *
-     * @param onComplete Runnable to execute after recognition is complete
+     * @param job The job whose image is recognized
+     * @throws Exception If the image cannot be decoded or recognition fails
      */
-    private void recognizeImage(Runnable onComplete)
+    private void recognizeImage(CaptureJob job) throws Exception
     {
-        new Thread(() -> {
-            FirebaseVisionImage image = FirebaseVisionImage.fromBitmap(imageBitmap);
-            FirebaseVisionImageLabeler labeler = FirebaseVision.getInstance().getOnDeviceImageLabeler();
-
-            labeler.processImage(image)
-                    .addOnSuccessListener(firebaseVisionImageLabels -> {
-                        if (firebaseVisionImageLabels.isEmpty())
-                        {
-                            sendNotification("FindIt Result", "No labels found.");
-                            handler.post(() -> Toast.makeText(this, "No labels found.", Toast.LENGTH_LONG).show());
-                            onComplete.run();
-                            return;
-                        }
-
-                        bestLabel = "Nothing Found";
-                        float highestConfidence = 0;
-
-                        for (FirebaseVisionImageLabel label : firebaseVisionImageLabels)
-                        {
-                            if (label.getConfidence() > highestConfidence)
-                            {
-                                highestConfidence = label.getConfidence();
-                                bestLabel = label.getText();
-                            }
-                        }
-
-                        sendNotification("FindIt Result", "Found object: " + bestLabel);
-                        handler.post(() -> Toast.makeText(this, "Found object: " + bestLabel, Toast.LENGTH_LONG).show());
-                        onComplete.run();
-                    })
-                    .addOnFailureListener(e -> {
-                        sendNotification("FindIt Result", "Failed to get data.");
-                        handler.post(() -> Toast.makeText(this, "Failed to get data.", Toast.LENGTH_LONG).show());
-                        onComplete.run();
-                    });
-        }).start();
+        job.setImageBitmap(BitmapLoader.decodeSampled(this, job.getImageUri(), BitmapLoader.LABELER_INPUT_SIZE, BitmapLoader.LABELER_INPUT_SIZE));
+
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        int maxLabels = Math.max(1, prefs.getInt(KEY_LABEL_COUNT, DEFAULT_LABEL_COUNT));
+        float minConfidence = prefs.getFloat(KEY_LABEL_MIN_CONFIDENCE, DEFAULT_LABEL_MIN_CONFIDENCE);
+        boolean detectObjects = prefs.getBoolean(KEY_DETECTION_MODE, false);
+
+        String engineName = LabelingEngineProvider.getEngineName(this);
+
+        LabelCache labelCache = LabelCache.getInstance(this);
+        long imageHash = LabelCache.computeHash(job.getImageBitmap());
+        String cachedLabels = detectObjects ? null : labelCache.get(engineName, imageHash);
+        if (cachedLabels != null)
+        {
+            List<LabelResult> labels = LabelResult.decode(cachedLabels);
+            if (!labels.isEmpty())
+            {
+                setLabels(job, labels);
+                announceLabel(job.getLabel());
+                return;
+            }
+        }
+
+        List<LabelResult> topLabels;
+        LabelingEngine engine = LabelingEngineProvider.acquire(this);
+        try
+        {
+            List<LabeledRegion> regions = detectObjects
+                    ? RegionLabeler.detectAndLabel(engine, job.getImageBitmap(), maxLabels, minConfidence)
+                    : Collections.<LabeledRegion>emptyList();
+            job.setRegions(regions.isEmpty() ? null : LabeledRegion.encode(regions));
+
+            // Without any labeled object, e.g. in a close-up, the whole image is labeled instead
+            topLabels = regions.isEmpty()
+                    ? LabelingPipeline.labelImage(engine, job.getImageBitmap(), maxLabels, minConfidence)
+                    : LabelingPipeline.selectLabels(LabeledRegion.mergeLabels(regions), maxLabels, minConfidence);
+        }
+
+        catch (Exception e)
+        {
+            sendNotification("FindIt Result", "Failed to get data.");
+            handler.post(() -> Toast.makeText(this, "Failed to get data.", Toast.LENGTH_LONG).show());
+            throw e;
+        }
+
+        finally
+        {
+            LabelingEngineProvider.release(engine);
+        }
+
+        if (topLabels.isEmpty())
+        {
+            job.setLabel("Nothing Found");
+            job.setLabels("");
+            sendNotification("FindIt Result", "No labels found.");
+            handler.post(() -> Toast.makeText(this, "No labels found.", Toast.LENGTH_LONG).show());
+            return;
+        }
+
+        setLabels(job, topLabels);
+        if (job.getRegions() == null)
+            labelCache.put(engine.getName(), imageHash, job.getLabels());
+        announceLabel(job.getLabel());
     }
 
     /**
-     * Requests a single location update.
+     * Stores the labels found for an image on its job.
+     *
+     * @param job    The job whose image was recognized
+     * @param labels The kept labels, most confident first, not empty
      */
-    @SuppressLint("MissingPermission")
-    private void requestSingleLocationUpdate()
+    private static void setLabels(CaptureJob job, List<LabelResult> labels)
     {
-        locationManager = getSystemService(LocationManager.class);
-        if (locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER))
-            locationManager.requestSingleUpdate(LocationManager.GPS_PROVIDER, this, null);
-        else
-            uploadImageToStorage(bestLabel, "Location not available.");
+        job.setLabel(labels.get(0).getText());
+        job.setLabels(LabelResult.encode(labels));
     }
 
     /**
-     * Uploads the image to Firebase Storage with metadata.
+     * Notifies the user of the label found in the image.
      *
-     * @param name     The name of the image
-     * @param location The location metadata for the image
+     * @param label The best label found
      */
-    private void uploadImageToStorage(String name, String location)
+    private void announceLabel(String label)
     {
-        new Thread(() -> {
-            FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
-            if (user != null)
-            {
-                Random random = new Random();
-                int id = random.nextInt(1000000000);
+        sendNotification("FindIt Result", "Found object: " + label);
+        handler.post(() -> Toast.makeText(this, "Found object: " + label, Toast.LENGTH_LONG).show());
+    }
+
+    /**
+     * Starts looking for the device location without waiting for it.
+     *
+     * @return The location lookup of the job
+     */
+    private LocationProvider.Request startLocationRequest()
+    {
+        LocationProvider.Request request = locationProvider.start();
+        activeLocationRequests.add(request);
+        return request;
+    }
+
+    /**
+     * Blocks the calling worker thread until the location is found or the deadline passes,
+     * then resolves it to an address through the cached ReverseGeocoder. Uploads continue with whatever location is available by then,
+     * and with the coordinates if the Geocoder does not answer in time.
+     *
+     * @param request The lookup returned by startLocationRequest()
+     * @return The address or coordinates of the device, or LOCATION_NOT_AVAILABLE
+     * @throws InterruptedException If the worker thread is interrupted while waiting
+     */
+    private String awaitLocation(LocationProvider.Request request) throws InterruptedException
+    {
+        Location location = request.await(LocationProvider.DEFAULT_DEADLINE_MILLIS);
+        if (location == null)
+            return LOCATION_NOT_AVAILABLE;
 
-                String email = user.getEmail();
-                FirebaseStorage firebaseStorage = FirebaseStorage.getInstance();
-                StorageReference storageRef = firebaseStorage.getReference().child("images/" + email + "/" + name + "_" + id + ".jpg");
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+        String locationString = latitude + ", " + longitude;
 
-                StorageMetadata metadata = new StorageMetadata.Builder()
-                        .setCustomMetadata("location", location)
-                        .setCustomMetadata("author", email)
-                        .build();
+        ReverseGeocoder geocoder = ReverseGeocoder.getInstance(this);
+        String cached = geocoder.getCached(latitude, longitude);
+        if (cached != null)
+            return cached;
 
-                ByteArrayOutputStream stream = new ByteArrayOutputStream();
-                imageBitmap.compress(Bitmap.CompressFormat.JPEG, 100, stream);
-                byte[] imageBytes = stream.toByteArray();
-                UploadTask uploadTask = storageRef.putBytes(imageBytes, metadata);
+        try
+        {
+            String address = geocoder.resolve(latitude, longitude).get(GEOCODE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (address != null)
+                locationString = address;
+        }
 
-                uploadTask.addOnFailureListener(e -> stopSelf())
-                        .addOnSuccessListener(taskSnapshot -> stopSelf());
-            }
+        catch (ExecutionException e)
+        {
+            handler.post(() -> Toast.makeText(this, "Failed to get address from location", Toast.LENGTH_SHORT).show());
+        }
 
-            else
-            {
-                handler.post(() -> Toast.makeText(this, "User not authenticated", Toast.LENGTH_SHORT).show());
-                stopSelf();
-            }
-        }).start();
+        catch (TimeoutException e)
+        {
+            // The lookup keeps running and caches its address for the next capture nearby
+        }
+
+        return locationString;
     }
 
     /**
-     * Shows a toast message indicating that location permission is denied, but only once.
+     * Stops a location lookup once its job no longer needs it.
+     *
+     * @param request The lookup returned by startLocationRequest()
      */
-    private void showLocationPermissionDeniedToastOnce()
+    private void stopLocationRequest(LocationProvider.Request request)
     {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        boolean toastShown = prefs.getBoolean(KEY_TOAST_SHOWN, false);
-        if (!toastShown)
-        {
-            handler.post(() -> Toast.makeText(this, "Location permission denied. Using default location.", Toast.LENGTH_SHORT).show());
-            prefs.edit().putBoolean(KEY_TOAST_SHOWN, true).apply();
-        }
+        activeLocationRequests.remove(request);
+        request.cancel();
     }
 
     /**
-     * Callback for when the location has changed.
+     * Uploads the image to Firebase Storage with metadata, together with a thumbnail for the history rows.
+     * Blocks the calling worker thread until both uploads are complete.
      *
-     * @param location The new location
+     * @param job The job whose image, labels and location are uploaded
+     * @throws Exception If the image cannot be encoded or the upload fails
      */
-    @Override
-    public void onLocationChanged(Location location)
+    private void uploadImageToStorage(CaptureJob job) throws Exception
     {
-        double latitude = location.getLatitude();
-        double longitude = location.getLongitude();
-        locationString = latitude + ", " + longitude;
+        String name = job.getLabel();
+        String location = job.getLocation();
 
-        if (Geocoder.isPresent())
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null)
+            throw new NotAuthenticatedException();
+
+        UploadEncoder.Payload payload = UploadEncoder.fromPreferences(getSharedPreferences(PREFS_NAME, MODE_PRIVATE)).encode(this, job.getImageUri());
+
+        String email = user.getEmail();
+        if (job.getStoragePath() == null)
         {
-            Geocoder geocoder = new Geocoder(this, Locale.getDefault());
-            try
-            {
-                List<Address> addressList = geocoder.getFromLocation(latitude, longitude, 1);
-                if (addressList != null && !addressList.isEmpty())
-                {
-                    Address address = addressList.get(0);
-                    locationString = address.getAddressLine(0);
-                }
-            }
+            // Fix the path before the first attempt, so a retried upload overwrites instead of duplicating
+            Random random = new Random();
+            int id = random.nextInt(1000000000);
 
-            catch (Exception e)
-            {
-                handler.post(() -> Toast.makeText(this, "Failed to get address from location", Toast.LENGTH_SHORT).show());
-            }
+            job.setStoragePath("images/" + email + "/" + name + "_" + id + "." + payload.getFormat().getExtension());
+            jobStore.checkpoint(job);
         }
-        locationManager.removeUpdates(this);
-        uploadImageToStorage(bestLabel, locationString);
+
+        FirebaseStorage firebaseStorage = FirebaseStorage.getInstance();
+        StorageReference storageRef = firebaseStorage.getReference().child(job.getStoragePath());
+
+        StorageMetadata metadata = new StorageMetadata.Builder()
+                .setContentType(payload.getFormat().getMimeType())
+                .setCustomMetadata("location", location)
+                .setCustomMetadata("labels", job.getLabels())
+                .setCustomMetadata("author", email)
+                .build();
+
+        // Compressed originals are uploaded as-is, everything else is encoded once by the UploadEncoder
+        UploadTask uploadTask = payload.isPassThrough()
+                ? storageRef.putFile(payload.getSourceUri(), metadata)
+                : storageRef.putBytes(payload.getBytes(), metadata);
+
+        Tasks.await(uploadTask);
+        job.setWidth(payload.getWidth());
+        job.setHeight(payload.getHeight());
+
+        StorageReference thumbnailRef = firebaseStorage.getReference().child(CaptureRecord.thumbnailPathOf(job.getStoragePath()));
+        StorageMetadata thumbnailMetadata = new StorageMetadata.Builder()
+                .setContentType(UploadEncoder.Format.JPEG.getMimeType())
+                .build();
+
+        Tasks.await(thumbnailRef.putBytes(UploadEncoder.encodeThumbnail(this, job.getImageUri(), THUMBNAIL_SIZE), thumbnailMetadata));
     }
 
     /**
-     * Callback for when the GPS provider is enabled.
+     * Writes the capture record of an uploaded image to the user's Firestore capture index.
+     * Blocks the calling worker thread until the record is written.
      *
-     * @param provider The provider that was enabled
+     * @param job The job whose image was uploaded
+     * @throws Exception If the download URL cannot be fetched or the record cannot be written
      */
-    @Override
-    public void onProviderEnabled(String provider)
+    private void indexCapture(CaptureJob job) throws Exception
     {
-        handler.post(() -> Toast.makeText(this, "GPS Enabled!", Toast.LENGTH_LONG).show());
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null)
+            throw new NotAuthenticatedException();
+
+        StorageReference storageRef = FirebaseStorage.getInstance().getReference().child(job.getStoragePath());
+        StorageReference thumbnailRef = FirebaseStorage.getInstance().getReference().child(CaptureRecord.thumbnailPathOf(job.getStoragePath()));
+        // Fetch the URLs and the generations of the image and its thumbnail in parallel
+        Task<Uri> urlTask = storageRef.getDownloadUrl();
+        Task<Uri> thumbnailUrlTask = thumbnailRef.getDownloadUrl();
+        Task<StorageMetadata> metadataTask = storageRef.getMetadata();
+        Task<StorageMetadata> thumbnailMetadataTask = thumbnailRef.getMetadata();
+
+        // The capture time is when the search was queued, not when a possibly retried job got this far
+        CaptureRecord record = new CaptureRecord(job.getLabel(), job.getLocation(), job.getCreatedAt(),
+                job.getStoragePath(), Tasks.await(urlTask).toString(), job.getWidth(), job.getHeight());
+        record.setLabels(job.getLabels());
+        record.setRegions(job.getRegions());
+        record.setThumbnailUrl(Tasks.await(thumbnailUrlTask).toString());
+        record.setGeneration(Tasks.await(metadataTask).getGeneration());
+        record.setThumbnailGeneration(Tasks.await(thumbnailMetadataTask).getGeneration());
+
+        Tasks.await(CaptureRecord.collection(user.getEmail()).document(storageRef.getName()).set(record));
+
+        // Show the capture in the local history right away, the next sync brings its server update time
+        HistoryStore.getInstance(this).upsert(user.getEmail(), record);
     }
 
     /**
-     * Callback for when the GPS provider is disabled.
-     *
-     * @param provider The provider that was disabled
+     * Shows a toast message indicating that location permission is denied, but only once.
      */
-    @Override
-    public void onProviderDisabled(String provider)
+    private void showLocationPermissionDeniedToastOnce()
     {
-        handler.post(() -> Toast.makeText(this, "GPS Disabled!", Toast.LENGTH_LONG).show());
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        boolean toastShown = prefs.getBoolean(KEY_TOAST_SHOWN, false);
+        if (!toastShown)
+        {
+            handler.post(() -> Toast.makeText(this, "Location permission denied. Using default location.", Toast.LENGTH_SHORT).show());
+            prefs.edit().putBoolean(KEY_TOAST_SHOWN, true).apply();
+        }
     }
 
     @Override
@@ -0,0 +1,144 @@
+package com.example.findit;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * LabelResult is one label found in an image by a LabelingEngine, with the engine's confidence in it.
+ * A capture keeps its top labels in a compact text form, e.g. "Dog:0.93;Cat:0.41",
+ * which fits in Storage metadata, Firestore, the local history and the LabelCache alike.
+ */
+public final class LabelResult
+{
+    private static final char LABEL_SEPARATOR = ';'; // Separates the labels in the compact form
+    private static final char CONFIDENCE_SEPARATOR = ':'; // Separates a label text from its confidence
+
+    private final String text; // The label text
+    private final float confidence; // Confidence between 0 and 1
+
+    /**
+     * Constructor for LabelResult.
+     *
+     * @param text       The label text
+     * @param confidence The confidence between 0 and 1
+     */
+    public LabelResult(String text, float confidence)
+    {
+        this.text = text;
+        this.confidence = confidence;
+    }
+
+    /**
+     * Returns the most confident labels, most confident first.
+     *
+     * @param results       The labels found by an engine, in any order
+     * @param maxCount      The maximum number of labels to keep
+     * @param minConfidence The minimum confidence of a kept label
+     * @return The kept labels
+     */
+    public static List<LabelResult> top(List<LabelResult> results, int maxCount, float minConfidence)
+    {
+        List<LabelResult> sorted = new ArrayList<>();
+        for (LabelResult result : results)
+            if (result.confidence >= minConfidence)
+                sorted.add(result);
+
+        Collections.sort(sorted, (a, b) -> Float.compare(b.confidence, a.confidence));
+        return sorted.size() > maxCount ? new ArrayList<>(sorted.subList(0, maxCount)) : sorted;
+    }
+
+    /**
+     * Encodes labels in the compact form, with confidences rounded to two decimals.
+     *
+     * @param results The labels to encode
+     * @return The compact form, empty if there are no labels
+     */
+    public static String encode(List<LabelResult> results)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (LabelResult result : results)
+        {
+            if (builder.length() > 0)
+                builder.append(LABEL_SEPARATOR);
+
+            // The separators cannot appear in a text, or the compact form could not be split again
+            builder.append(result.text.replace(LABEL_SEPARATOR, ' ').replace(CONFIDENCE_SEPARATOR, ' '))
+                    .append(CONFIDENCE_SEPARATOR)
+                    .append(String.format(Locale.US, "%.2f", result.confidence));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Decodes labels from the compact form. Damaged entries are skipped.
+     *
+     * @param encoded The compact form, may be null
+     * @return The decoded labels, in their encoded order
+     */
+    public static List<LabelResult> decode(String encoded)
+    {
+        List<LabelResult> results = new ArrayList<>();
+        if (encoded == null || encoded.isEmpty())
+            return results;
+
+        for (String entry : encoded.split(String.valueOf(LABEL_SEPARATOR)))
+        {
+            int colon = entry.lastIndexOf(CONFIDENCE_SEPARATOR);
+            if (colon <= 0)
+                continue;
+
+            try
+            {
+                results.add(new LabelResult(entry.substring(0, colon), Float.parseFloat(entry.substring(colon + 1))));
+            }
+
+            catch (NumberFormatException e)
+            {
+                // Skip the damaged entry
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Returns the texts of labels in the compact form, separated by spaces, for full-text indexing.
+     *
+     * @param encoded The compact form, may be null
+     * @return The label texts
+     */
+    public static String textsOf(String encoded)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (LabelResult result : decode(encoded))
+        {
+            if (builder.length() > 0)
+                builder.append(' ');
+            builder.append(result.text);
+        }
+
+        return builder.toString();
+    }
+
+    public String getText()
+    {
+        return text;
+    }
+
+    public float getConfidence()
+    {
+        return confidence;
+    }
+
+    @NonNull
+    @Override
+    public String toString()
+    {
+        return text + " (" + confidence + ")";
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.findit;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LabeledRegion is one object found in a capture by the detection mode: its bounding box and the labels of its crop.
+ * The box is stored as fractions of the image size, so it applies to the original as well as to any scaled copy.
+ * The regions of a capture are kept as a JSON array, e.g. [{"box":[0.1,0.2,0.5,0.6],"labels":"Cup:0.91"}],
+ * with the labels in the compact form of LabelResult.encode().
+ */
+public final class LabeledRegion
+{
+    private static final String KEY_BOX = "box"; // JSON key of the bounding box
+    private static final String KEY_LABELS = "labels"; // JSON key of the labels
+
+    private final float left, top, right, bottom; // Bounding box as fractions of the image width and height
+    private final List<LabelResult> labels; // Labels of the region, most confident first
+
+    /**
+     * Constructor for LabeledRegion.
+     *
+     * @param left   The left edge as a fraction of the image width
+     * @param top    The top edge as a fraction of the image height
+     * @param right  The right edge as a fraction of the image width
+     * @param bottom The bottom edge as a fraction of the image height
+     * @param labels The labels of the region, most confident first
+     */
+    public LabeledRegion(float left, float top, float right, float bottom, List<LabelResult> labels)
+    {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        this.labels = labels;
+    }
+
+    /**
+     * Collects the labels of all regions, keeping the highest confidence of labels found in several regions.
+     *
+     * @param regions The labeled regions
+     * @return The labels of the image, in no particular order
+     */
+    public static List<LabelResult> mergeLabels(List<LabeledRegion> regions)
+    {
+        Map<String, LabelResult> merged = new LinkedHashMap<>();
+        for (LabeledRegion region : regions)
+        {
+            for (LabelResult label : region.labels)
+            {
+                LabelResult known = merged.get(label.getText());
+                if (known == null || known.getConfidence() < label.getConfidence())
+                    merged.put(label.getText(), label);
+            }
+        }
+
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * Encodes regions as a JSON array.
+     *
+     * @param regions The regions to encode
+     * @return The JSON array text
+     */
+    public static String encode(List<LabeledRegion> regions)
+    {
+        JSONArray array = new JSONArray();
+        try
+        {
+            for (LabeledRegion region : regions)
+            {
+                JSONArray box = new JSONArray()
+                        .put(round(region.left)).put(round(region.top)).put(round(region.right)).put(round(region.bottom));
+                array.put(new JSONObject().put(KEY_BOX, box).put(KEY_LABELS, LabelResult.encode(region.labels)));
+            }
+        }
+
+        catch (JSONException e)
+        {
+            // Only thrown for non-finite numbers, which the boxes never hold
+            throw new IllegalArgumentException(e);
+        }
+
+        return array.toString();
+    }
+
+    /**
+     * Decodes regions from a JSON array. Damaged entries are skipped.
+     *
+     * @param encoded The JSON array text, may be null
+     * @return The decoded regions
+     */
+    public static List<LabeledRegion> decode(String encoded)
+    {
+        List<LabeledRegion> regions = new ArrayList<>();
+        if (encoded == null || encoded.isEmpty())
+            return regions;
+
+        try
+        {
+            JSONArray array = new JSONArray(encoded);
+            for (int i = 0; i < array.length(); i++)
+            {
+                JSONObject object = array.optJSONObject(i);
+                JSONArray box = object != null ? object.optJSONArray(KEY_BOX) : null;
+                if (box == null || box.length() != 4)
+                    continue;
+
+                regions.add(new LabeledRegion((float) box.optDouble(0), (float) box.optDouble(1),
+                        (float) box.optDouble(2), (float) box.optDouble(3),
+                        LabelResult.decode(object.optString(KEY_LABELS))));
+            }
+        }
+
+        catch (JSONException e)
+        {
+            // A damaged value holds no usable regions
+        }
+
+        return regions;
+    }
+
+    /**
+     * Returns the label texts of all encoded regions, separated by spaces, for full-text indexing.
+     *
+     * @param encoded The JSON array text, may be null
+     * @return The label texts
+     */
+    public static String textsOf(String encoded)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (LabeledRegion region : decode(encoded))
+        {
+            for (LabelResult label : region.labels)
+            {
+                if (builder.length() > 0)
+                    builder.append(' ');
+                builder.append(label.getText());
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Rounds a box edge to three decimals, enough for any screen, to keep the JSON short.
+     *
+     * @param value The edge as a fraction
+     * @return The rounded edge
+     */
+    private static double round(float value)
+    {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    public float getLeft()
+    {
+        return left;
+    }
+
+    public float getTop()
+    {
+        return top;
+    }
+
+    public float getRight()
+    {
+        return right;
+    }
+
+    public float getBottom()
+    {
+        return bottom;
+    }
+
+    public List<LabelResult> getLabels()
+    {
+        return labels;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.findit;
+
+import android.graphics.Bitmap;
+
+import java.util.List;
+
+/**
+ * LabelingEngine finds labels in an image. LabelHandlerService depends only on this interface,
+ * so the model behind it can be swapped, pinned, or benchmarked on the same device without network access.
+ * Engines are shared through LabelingEngineProvider and may be called from several worker threads.
+ */
+public interface LabelingEngine
+{
+    /**
+     * Returns the name of the engine, as stored in the preferences.
+     *
+     * @return The engine name
+     */
+    String getName();
+
+    /**
+     * Returns the width of the images the model takes. Images of this size and getInputHeight() are labeled as they are,
+     * any other image is preprocessed to it first.
+     *
+     * @return The input width in pixels
+     */
+    int getInputWidth();
+
+    /**
+     * Returns the height of the images the model takes.
+     *
+     * @return The input height in pixels
+     */
+    int getInputHeight();
+
+    /**
+     * Finds labels in the given image. Blocks the calling worker thread until inference is complete.
+     *
+     * @param bitmap The image, which is not modified or recycled
+     * @return The labels found, in no particular order, possibly empty
+     * @throws Exception If inference fails
+     */
+    List<LabelResult> label(Bitmap bitmap) throws Exception;
+
+    /**
+     * Loads the model and runs one inference, so initialization is paid before the first real search.
+     * May block, so it must not be called on the main thread.
+     */
+    void warmUp();
+
+    /**
+     * Releases the model. The engine loads it again on its next use.
+     */
+    void close();
+}
@@ -0,0 +1,162 @@
+package com.example.findit;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Configuration;
+
+import androidx.annotation.NonNull;
+
+/**
+ * LabelingEngineProvider holds the labeling engine chosen in the preferences for the whole app process.
+ * The engine is created on first use, replaced when the preference changes, and retired when the system is critically
+ * low on memory, together with the object detector and the bitmaps pooled for labeling.
+ * Callers acquire the engine around each use, so a retired engine is only closed once no worker is still running it.
+ */
+public final class LabelingEngineProvider
+{
+    public static final String KEY_LABELING_ENGINE = "labeling_engine"; // Preference key of the engine name
+    private static final String PREFS_NAME = "FindItPrefs"; // SharedPreferences file name
+
+    private static final SharedResource<LabelingEngine> engine = new SharedResource<>(LabelingEngine::close); // The shared engine
+    private static String engineName; // Name of the engine the shared engine is created as
+    private static boolean callbacksRegistered; // Whether the memory trim callbacks were registered
+
+    private LabelingEngineProvider()
+    {
+    }
+
+    /**
+     * Returns the engine chosen in the preferences, creating it on first use, after a retirement or after the preference changed.
+     * Every call must be matched by a call to release() once the engine is no longer used.
+     *
+     * @param context Any context, used to read the preferences and register for memory trim callbacks
+     * @return The shared labeling engine
+     */
+    public static synchronized LabelingEngine acquire(Context context)
+    {
+        Context appContext = context.getApplicationContext();
+        if (!callbacksRegistered)
+        {
+            appContext.registerComponentCallbacks(new TrimCallbacks());
+            callbacksRegistered = true;
+        }
+
+        String name = getEngineName(appContext);
+        if (!name.equals(engineName))
+        {
+            engine.retire();
+            engineName = name;
+        }
+
+        return engine.acquire(() -> create(name));
+    }
+
+    /**
+     * Releases an engine returned by acquire().
+     *
+     * @param acquired The acquired engine
+     */
+    public static void release(LabelingEngine acquired)
+    {
+        engine.release(acquired);
+    }
+
+    /**
+     * Returns the name of the engine that acquire() uses: the one chosen in the preferences,
+     * or the Firebase labeler if the preference names an unknown engine.
+     *
+     * @param context Any context
+     * @return The engine name
+     */
+    public static String getEngineName(Context context)
+    {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String name = prefs.getString(KEY_LABELING_ENGINE, FirebaseLabelingEngine.NAME);
+
+        if (FakeLabelingEngine.NAME.equals(name))
+            return name;
+
+        return FirebaseLabelingEngine.NAME;
+    }
+
+    /**
+     * Creates the engine on a background thread and runs one inference on a blank image,
+     * so model loading and initialization are paid before the first real search.
+     *
+     * @param context Any context
+     */
+    public static void warmUp(Context context)
+    {
+        LabelingEngine labelingEngine = acquire(context);
+        new Thread(() ->
+        {
+            try
+            {
+                labelingEngine.warmUp();
+            }
+
+            finally
+            {
+                release(labelingEngine);
+            }
+        }, "LabelingEngineWarmUp").start();
+    }
+
+    /**
+     * Retires the shared engine. It is closed once no worker uses it, and the next call to acquire() creates a new one.
+     */
+    public static void retire()
+    {
+        engine.retire();
+    }
+
+    /**
+     * Creates the engine with the given name, as returned by getEngineName().
+     *
+     * @param name The name of the engine
+     * @return The new engine
+     */
+    private static LabelingEngine create(String name)
+    {
+        if (FakeLabelingEngine.NAME.equals(name))
+            return new FakeLabelingEngine();
+
+        return new FirebaseLabelingEngine();
+    }
+
+    /**
+     * Retires the engine and the object detector and drops the pooled bitmaps when the system is critically low on memory.
+     * Merely moving to the background keeps them, so returning to the app does not pay for loading the models again.
+     */
+    private static class TrimCallbacks implements ComponentCallbacks2
+    {
+        @Override
+        public void onTrimMemory(int level)
+        {
+            if (level == TRIM_MEMORY_RUNNING_CRITICAL || level >= TRIM_MEMORY_COMPLETE)
+                releaseModels();
+        }
+
+        @Override
+        public void onLowMemory()
+        {
+            releaseModels();
+        }
+
+        /**
+         * Retires the shared models and drops the pooled bitmaps.
+         */
+        private void releaseModels()
+        {
+            retire();
+            RegionLabeler.retire();
+            BitmapPool.clear();
+        }
+
+        @Override
+        public void onConfigurationChanged(@NonNull Configuration newConfig)
+        {
+        }
+    }
+}
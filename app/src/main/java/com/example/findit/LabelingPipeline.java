@@ -0,0 +1,51 @@
+package com.example.findit;
+
+import android.graphics.Bitmap;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * LabelingPipeline turns what a LabelingEngine finds in an image into the labels kept on a capture.
+ * It holds no Android state, so it runs the same in the service and in local unit tests.
+ */
+public final class LabelingPipeline
+{
+    private LabelingPipeline()
+    {
+    }
+
+    /**
+     * Labels an image and keeps its best labels.
+     * Blocks the calling thread until the engine is done.
+     *
+     * @param engine        The engine labeling the image
+     * @param bitmap        The image to label
+     * @param maxLabels     The maximum number of labels to keep
+     * @param minConfidence The minimum confidence of a kept label
+     * @return The kept labels, most confident first, empty if the engine found nothing
+     * @throws Exception If the engine fails
+     */
+    public static List<LabelResult> labelImage(LabelingEngine engine, Bitmap bitmap, int maxLabels, float minConfidence) throws Exception
+    {
+        return selectLabels(engine.label(bitmap), maxLabels, minConfidence);
+    }
+
+    /**
+     * Keeps the best labels found in an image.
+     * The best label is kept even below the threshold, as it names the upload.
+     *
+     * @param results       The labels found by an engine, in any order
+     * @param maxLabels     The maximum number of labels to keep
+     * @param minConfidence The minimum confidence of a kept label
+     * @return The kept labels, most confident first, empty only if there were no labels at all
+     */
+    public static List<LabelResult> selectLabels(List<LabelResult> results, int maxLabels, float minConfidence)
+    {
+        if (results.isEmpty())
+            return Collections.emptyList();
+
+        List<LabelResult> topLabels = LabelResult.top(results, Math.max(1, maxLabels), minConfidence);
+        return topLabels.isEmpty() ? LabelResult.top(results, 1, 0) : topLabels;
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.findit;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.media.Image;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Size;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.OptIn;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ExperimentalGetImage;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.core.Preview;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.PreviewView;
+import androidx.core.content.ContextCompat;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.ml.vision.common.FirebaseVisionImageMetadata;
+import com.google.firebase.ml.vision.label.FirebaseVisionImageLabel;
+import com.google.firebase.ml.vision.label.FirebaseVisionImageLabeler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * LiveLabelActivity labels what the camera sees in real time ("point and find").
+ * Preview frames come from a CameraX ImageAnalysis use case that keeps only the latest frame,
+ * and are handed to the on-device labeler as YUV media images, without converting them to bitmaps.
+ * At most one frame is labeled at a time and inference is throttled to a target rate,
+ * every other frame is dropped at once, so the labels stay current without keeping the device busy.
+ */
+public class LiveLabelActivity extends AppCompatActivity implements View.OnClickListener
+{
+    private static final int TARGET_FPS = 3; // Frames labeled per second at most
+    private static final long FRAME_INTERVAL_MILLIS = 1000 / TARGET_FPS; // Minimum time between two labeled frames
+    private static final Size ANALYSIS_SIZE = new Size(640, 480); // Preferred resolution of the analyzed frames, in sensor orientation
+    private static final int SHOWN_LABELS = 3; // Number of labels shown for a frame
+    private static final float MIN_SHOWN_CONFIDENCE = 0.5f; // Confidence a shown label needs
+
+    // UI elements
+    private PreviewView previewView;
+    private TextView txtLabels;
+    private Button btnReturn;
+
+    private ActivityResultLauncher<String> cameraPermissionLauncher;
+    private final ExecutorService analysisExecutor = Executors.newSingleThreadExecutor(); // Receives the analyzed frames
+    private volatile boolean labeling; // Whether a frame is being labeled
+    private long lastLabeledAt; // Uptime at which the last labeled frame was taken, only accessed on the analysis thread
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_live_label);
+
+        previewView = findViewById(R.id.previewViewID);
+        txtLabels = findViewById(R.id.txtLiveLabelsID);
+        btnReturn = findViewById(R.id.btnLiveReturnID);
+        btnReturn.setOnClickListener(this);
+
+        cameraPermissionLauncher = registerForActivityResult(
+                new ActivityResultContracts.RequestPermission(),
+                this::handleCameraPermissionResult);
+
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED)
+            startCamera();
+        else
+            cameraPermissionLauncher.launch(Manifest.permission.CAMERA);
+    }
+
+    /**
+     * Handle the result of the camera permission request
+     *
+     * @param isGranted true if the permission was granted, false otherwise
+     */
+    private void handleCameraPermissionResult(boolean isGranted)
+    {
+        if (isGranted)
+            startCamera();
+        else
+        {
+            Toast.makeText(this, "Camera permission denied.", Toast.LENGTH_SHORT).show();
+            finish();
+        }
+    }
+
+    /**
+     * Bind the preview and the frame analysis to the back camera for the lifetime of this activity.
+     */
+    private void startCamera()
+    {
+        ListenableFuture<ProcessCameraProvider> providerFuture = ProcessCameraProvider.getInstance(this);
+        providerFuture.addListener(() ->
+        {
+            ProcessCameraProvider cameraProvider;
+            try
+            {
+                cameraProvider = providerFuture.get();
+            }
+
+            catch (ExecutionException | InterruptedException e)
+            {
+                Toast.makeText(this, "Failed to open the camera: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                finish();
+                return;
+            }
+
+            Preview preview = new Preview.Builder().build();
+            preview.setSurfaceProvider(previewView.getSurfaceProvider());
+
+            // Prefer the closest size not above ANALYSIS_SIZE, the labeler gains nothing from larger frames
+            ResolutionSelector resolutionSelector = new ResolutionSelector.Builder()
+                    .setResolutionStrategy(new ResolutionStrategy(ANALYSIS_SIZE, ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER))
+                    .build();
+
+            // Frames arriving while the analyzer is busy replace each other instead of queuing up
+            ImageAnalysis analysis = new ImageAnalysis.Builder()
+                    .setResolutionSelector(resolutionSelector)
+                    .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                    .build();
+            analysis.setAnalyzer(analysisExecutor, this::analyzeFrame);
+
+            cameraProvider.unbindAll();
+            cameraProvider.bindToLifecycle(this, CameraSelector.DEFAULT_BACK_CAMERA, preview, analysis);
+        }, ContextCompat.getMainExecutor(this));
+    }
+
+    /**
+     * Label a preview frame, unless a frame is still being labeled or the last one was labeled too recently.
+     * The frame stays open until the labeler is done with it, which also holds back the next frame.
+     *
+     * @param frame The latest preview frame
+     */
+    @OptIn(markerClass = ExperimentalGetImage.class)
+    private void analyzeFrame(ImageProxy frame)
+    {
+        long now = SystemClock.uptimeMillis();
+        Image mediaImage = frame.getImage();
+        if (mediaImage == null || labeling || now - lastLabeledAt < FRAME_INTERVAL_MILLIS)
+        {
+            frame.close();
+            return;
+        }
+
+        labeling = true;
+        lastLabeledAt = now;
+
+        FirebaseVisionImage image = FirebaseVisionImage.fromMediaImage(mediaImage, toFirebaseRotation(frame.getImageInfo().getRotationDegrees()));
+        FirebaseVisionImageLabeler labeler = ImageLabelerProvider.acquire();
+        // Completes on the main thread, which outlives the analysis executor when the activity is closed
+        labeler.processImage(image).addOnCompleteListener(ContextCompat.getMainExecutor(this), task ->
+        {
+            ImageLabelerProvider.release(labeler);
+            frame.close();
+            labeling = false;
+
+            if (task.isSuccessful())
+                showLabels(task.getResult());
+        });
+    }
+
+    /**
+     * Show the most confident labels of a frame. Called on the main thread.
+     *
+     * @param firebaseVisionImageLabels The labels found in the frame
+     */
+    private void showLabels(List<FirebaseVisionImageLabel> firebaseVisionImageLabels)
+    {
+        List<LabelResult> results = new ArrayList<>(firebaseVisionImageLabels.size());
+        for (FirebaseVisionImageLabel label : firebaseVisionImageLabels)
+            results.add(new LabelResult(label.getText(), label.getConfidence()));
+
+        StringBuilder text = new StringBuilder();
+        for (LabelResult result : LabelResult.top(results, SHOWN_LABELS, MIN_SHOWN_CONFIDENCE))
+        {
+            if (text.length() > 0)
+                text.append('\n');
+            text.append(String.format(Locale.getDefault(), "%s %d%%", result.getText(), Math.round(result.getConfidence() * 100)));
+        }
+
+        txtLabels.setText(text.length() > 0 ? text.toString() : "Nothing Found");
+    }
+
+    /**
+     * Converts the rotation of a frame to the rotation constant of the Firebase labeler.
+     *
+     * @param degrees The clockwise rotation that makes the frame upright
+     * @return The matching FirebaseVisionImageMetadata rotation
+     */
+    private static int toFirebaseRotation(int degrees)
+    {
+        switch (degrees)
+        {
+            case 90:
+                return FirebaseVisionImageMetadata.ROTATION_90;
+            case 180:
+                return FirebaseVisionImageMetadata.ROTATION_180;
+            case 270:
+                return FirebaseVisionImageMetadata.ROTATION_270;
+            default:
+                return FirebaseVisionImageMetadata.ROTATION_0;
+        }
+    }
+
+    @Override
+    public void onClick(View v)
+    {
+        if (v.getId() == R.id.btnLiveReturnID)
+            finish();
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+        analysisExecutor.shutdown();
+    }
+}
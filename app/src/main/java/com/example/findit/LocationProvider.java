@@ -0,0 +1,205 @@
+package com.example.findit;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LocationProvider finds the device location within a bounded time.
+ * A recent enough last-known fix is returned right away. Otherwise a single update is requested
+ * from every enabled provider (GPS, network and, where available, fused) and the first fix wins.
+ * If no fix arrives before the deadline, the freshest last-known fix is used, however old it is.
+ * The caller needs to hold the location permission.
+ */
+public class LocationProvider
+{
+    public static final long MAX_FIX_AGE_MILLIS = 2 * 60 * 1000; // Last-known fixes younger than this are used right away
+    public static final long DEFAULT_DEADLINE_MILLIS = 15 * 1000; // Time allowed for a new fix before falling back
+
+    private final LocationManager locationManager;
+
+    /**
+     * Constructor for LocationProvider.
+     *
+     * @param context The context used to access the LocationManager
+     */
+    public LocationProvider(Context context)
+    {
+        locationManager = context.getSystemService(LocationManager.class);
+    }
+
+    /**
+     * Starts looking for the device location without waiting for it.
+     *
+     * @return The request, to be awaited with Request.await() and released with Request.cancel()
+     */
+    @SuppressLint("MissingPermission")
+    public Request start()
+    {
+        Location lastKnown = getFreshestLastKnownLocation();
+        Request request = new Request(lastKnown);
+
+        if (lastKnown != null && getAgeMillis(lastKnown) <= MAX_FIX_AGE_MILLIS)
+        {
+            request.complete(lastKnown);
+            return request;
+        }
+
+        List<String> providers = getEnabledProviders();
+        if (providers.isEmpty())
+        {
+            // Nothing can deliver a new fix, so don't wait for the deadline
+            request.complete(null);
+            return request;
+        }
+
+        for (String provider : providers)
+            locationManager.requestSingleUpdate(provider, request, Looper.getMainLooper());
+
+        return request;
+    }
+
+    /**
+     * Returns the providers to request a new fix from, most accurate first.
+     *
+     * @return The enabled providers
+     */
+    private List<String> getEnabledProviders()
+    {
+        List<String> providers = new ArrayList<>();
+        providers.add(LocationManager.GPS_PROVIDER);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S)
+            providers.add(LocationManager.FUSED_PROVIDER);
+        providers.add(LocationManager.NETWORK_PROVIDER);
+
+        List<String> enabled = new ArrayList<>();
+        for (String provider : providers)
+        {
+            if (locationManager.getAllProviders().contains(provider) && locationManager.isProviderEnabled(provider))
+                enabled.add(provider);
+        }
+
+        return enabled;
+    }
+
+    /**
+     * Returns the most recent last-known fix of all providers.
+     *
+     * @return The freshest last-known fix, or null if no provider has one
+     */
+    @SuppressLint("MissingPermission")
+    private Location getFreshestLastKnownLocation()
+    {
+        Location freshest = null;
+
+        for (String provider : locationManager.getAllProviders())
+        {
+            Location location = locationManager.getLastKnownLocation(provider);
+            if (location != null && (freshest == null || getAgeMillis(location) < getAgeMillis(freshest)))
+                freshest = location;
+        }
+
+        return freshest;
+    }
+
+    /**
+     * Returns how long ago the given fix was taken.
+     *
+     * @param location The fix
+     * @return The age of the fix in milliseconds
+     */
+    private static long getAgeMillis(Location location)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos());
+    }
+
+    /**
+     * A location lookup in progress. Receives the first fix from any provider.
+     */
+    public class Request implements LocationListener
+    {
+        private final CountDownLatch latch = new CountDownLatch(1); // Released once a fix has been received
+        private final long startedAt = SystemClock.elapsedRealtime(); // When the lookup started, the deadline counts from here
+        private final Location fallback; // Freshest last-known fix, used if no new fix arrives in time
+        private volatile Location result; // The received fix
+
+        private Request(Location fallback)
+        {
+            this.fallback = fallback;
+        }
+
+        /**
+         * Blocks the calling thread until a fix is received or the deadline passes.
+         * Must not be called on the main thread.
+         *
+         * @param deadlineMillis Time allowed since the request was started
+         * @return The received fix, the freshest last-known fix if none arrived in time, or null if neither exists
+         * @throws InterruptedException If the calling thread is interrupted while waiting
+         */
+        public Location await(long deadlineMillis) throws InterruptedException
+        {
+            long remaining = startedAt + deadlineMillis - SystemClock.elapsedRealtime();
+            if (remaining > 0)
+                latch.await(remaining, TimeUnit.MILLISECONDS);
+
+            cancel();
+            return result != null ? result : fallback;
+        }
+
+        /**
+         * Stops listening for updates. Safe to call more than once.
+         */
+        public void cancel()
+        {
+            locationManager.removeUpdates(this);
+        }
+
+        /**
+         * Records the fix and releases the waiting thread.
+         *
+         * @param location The fix
+         */
+        private void complete(Location location)
+        {
+            if (result == null)
+                result = location;
+            latch.countDown();
+        }
+
+        @Override
+        public void onLocationChanged(@NonNull Location location)
+        {
+            complete(location);
+            cancel();
+        }
+
+        @Override
+        public void onProviderEnabled(@NonNull String provider)
+        {
+        }
+
+        @Override
+        public void onProviderDisabled(@NonNull String provider)
+        {
+        }
+
+        // Abstract in the framework interface before API 30, where a missing override throws AbstractMethodError
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras)
+        {
+        }
+    }
+}
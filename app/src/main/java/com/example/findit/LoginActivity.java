@@ -90,6 +90,9 @@ public class LoginActivity extends AppCompatActivity implements View.OnClickList
         {
             if (task.isSuccessful())
             {
+                // Resume searches that were queued while nobody was signed in
+                startService(new Intent(LoginActivity.this, LabelHandlerService.class));
+
                 Intent intent = new Intent(LoginActivity.this, SearchPageActivity.class);
                 startActivity(intent);
                 finish();
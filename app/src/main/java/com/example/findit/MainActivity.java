@@ -16,6 +16,9 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        // Load the image labeler while the splash screen is shown, so the first search is as fast as the rest
+        LabelingEngineProvider.warmUp(this);
+
         // Handler to delay the transition by 3 seconds (3000 milliseconds)
         new Handler().postDelayed(() ->
         {
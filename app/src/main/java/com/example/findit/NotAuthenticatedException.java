@@ -0,0 +1,16 @@
+package com.example.findit;
+
+/**
+ * NotAuthenticatedException is thrown when a capture job reaches a stage that needs a signed-in user while nobody is signed in,
+ * e.g. while Firebase Auth is still restoring the session. The job is kept queued and resumes once the user signs in.
+ */
+public class NotAuthenticatedException extends Exception
+{
+    /**
+     * Constructor for NotAuthenticatedException.
+     */
+    public NotAuthenticatedException()
+    {
+        super("User not authenticated");
+    }
+}
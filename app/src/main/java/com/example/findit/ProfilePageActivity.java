@@ -19,6 +19,7 @@ import androidx.core.content.ContextCompat;
 
 import com.bumptech.glide.Glide;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.AuthResult;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
@@ -26,6 +27,7 @@ import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.SetOptions;
 import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageMetadata;
 import com.google.firebase.storage.StorageReference;
 
 import java.util.HashMap;
@@ -134,10 +136,17 @@ public class ProfilePageActivity extends AppCompatActivity implements View.OnCli
                         // Load the profile picture from Firebase Storage
                         StorageReference profilePicRef = firebaseStorage.getReference()
                                 .child("profiles/" + email + "/profile_picture");
-                        profilePicRef.getDownloadUrl().addOnSuccessListener(uri ->
+                        Task<Uri> urlTask = profilePicRef.getDownloadUrl();
+                        Task<StorageMetadata> metadataTask = profilePicRef.getMetadata();
+                        Tasks.whenAllSuccess(urlTask, metadataTask).addOnSuccessListener(results ->
                         {
-                            // Load the image using Glide
-                            Glide.with(this).load(uri).into(profilePicture);
+                            // Load the image using Glide, keyed by its generation so a replaced picture is not served from the cache
+                            int size = getResources().getDimensionPixelSize(R.dimen.profile_picture_size);
+                            Glide.with(this)
+                                    .load(new StorageGlideUrl(urlTask.getResult().toString(), profilePicRef.getPath(), metadataTask.getResult().getGeneration()))
+                                    .override(size)
+                                    .centerCrop()
+                                    .into(profilePicture);
                         }).addOnFailureListener(e ->
                         {
                             // Handle any errors
@@ -0,0 +1,209 @@
+package com.example.findit;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.ml.vision.FirebaseVision;
+import com.google.firebase.ml.vision.common.FirebaseVisionImage;
+import com.google.firebase.ml.vision.objects.FirebaseVisionObject;
+import com.google.firebase.ml.vision.objects.FirebaseVisionObjectDetector;
+import com.google.firebase.ml.vision.objects.FirebaseVisionObjectDetectorOptions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * RegionLabeler implements the detection mode: it finds the objects in an image with the on-device
+ * Firebase object detector, then labels the crop of each object in parallel on a small worker pool.
+ * Every crop is drawn straight from the shared decoded image into a pooled bitmap, so no copy of the image is made per object.
+ * Crops are made at the input size of the engine labeling them, so the engine labels them without preprocessing them again.
+ * The detector is shared for the whole app process and retired with the labeling engine when memory is trimmed,
+ * then closed once no detection uses it.
+ */
+public final class RegionLabeler
+{
+    private static final int MAX_REGIONS = 5; // Largest objects labeled per image
+    private static final int MIN_REGION_EDGE = 24; // Objects smaller than this in decoded pixels are ignored
+    private static final ExecutorService regionExecutor = Executors.newFixedThreadPool(2); // Labels the crops of an image in parallel
+
+    private static final SharedResource<FirebaseVisionObjectDetector> detector = new SharedResource<>(RegionLabeler::close); // The shared detector
+
+    private RegionLabeler()
+    {
+    }
+
+    /**
+     * Finds the objects in an image and labels each of them.
+     * Blocks the calling worker thread until every region is labeled.
+     *
+     * @param engine        The engine labeling the crops
+     * @param source        The decoded image, only read
+     * @param maxLabels     The maximum number of labels kept per region
+     * @param minConfidence The minimum confidence of a kept label
+     * @return The labeled regions, largest first, without regions that got no label
+     * @throws Exception If detection or labeling fails
+     */
+    public static List<LabeledRegion> detectAndLabel(LabelingEngine engine, Bitmap source, int maxLabels, float minConfidence) throws Exception
+    {
+        FirebaseVisionObjectDetector objectDetector = detector.acquire(RegionLabeler::createDetector);
+        List<FirebaseVisionObject> objects;
+        try
+        {
+            objects = Tasks.await(objectDetector.processImage(FirebaseVisionImage.fromBitmap(source)));
+        }
+
+        finally
+        {
+            detector.release(objectDetector);
+        }
+
+        List<Rect> boxes = new ArrayList<>();
+        Rect bounds = new Rect(0, 0, source.getWidth(), source.getHeight());
+        for (FirebaseVisionObject object : objects)
+        {
+            Rect box = new Rect(object.getBoundingBox());
+            if (box.intersect(bounds) && box.width() >= MIN_REGION_EDGE && box.height() >= MIN_REGION_EDGE)
+                boxes.add(box);
+        }
+
+        Collections.sort(boxes, (a, b) -> Integer.compare(b.width() * b.height(), a.width() * a.height()));
+        if (boxes.size() > MAX_REGIONS)
+            boxes = boxes.subList(0, MAX_REGIONS);
+
+        List<Future<List<LabelResult>>> futures = new ArrayList<>(boxes.size());
+        for (Rect box : boxes)
+            futures.add(regionExecutor.submit(() -> labelRegion(engine, source, box)));
+
+        List<LabeledRegion> regions = new ArrayList<>(boxes.size());
+        try
+        {
+            for (int i = 0; i < boxes.size(); i++)
+            {
+                List<LabelResult> labels = LabelResult.top(futures.get(i).get(), maxLabels, minConfidence);
+                if (labels.isEmpty())
+                    continue;
+
+                Rect box = boxes.get(i);
+                regions.add(new LabeledRegion((float) box.left / bounds.width(), (float) box.top / bounds.height(),
+                        (float) box.right / bounds.width(), (float) box.bottom / bounds.height(), labels));
+            }
+        }
+
+        catch (ExecutionException e)
+        {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+
+        finally
+        {
+            // The source is released by the caller once this returns, so no crop may still be reading it
+            for (Future<List<LabelResult>> future : futures)
+                awaitQuietly(future);
+        }
+
+        return regions;
+    }
+
+    /**
+     * Retires the shared detector. It is closed once no detection uses it, and the next detection creates a new one.
+     */
+    public static void retire()
+    {
+        detector.retire();
+    }
+
+    /**
+     * Creates the detector.
+     *
+     * @return The on-device object detector, set up for single images with multiple objects
+     */
+    private static FirebaseVisionObjectDetector createDetector()
+    {
+        FirebaseVisionObjectDetectorOptions options = new FirebaseVisionObjectDetectorOptions.Builder()
+                .setDetectorMode(FirebaseVisionObjectDetectorOptions.SINGLE_IMAGE_MODE)
+                .enableMultipleObjects()
+                .build();
+        return FirebaseVision.getInstance().getOnDeviceObjectDetector(options);
+    }
+
+    /**
+     * Closes a retired detector that is no longer used.
+     *
+     * @param retired The detector to close
+     */
+    private static void close(FirebaseVisionObjectDetector retired)
+    {
+        try
+        {
+            retired.close();
+        }
+
+        catch (IOException e)
+        {
+            // The detector is dropped either way
+        }
+    }
+
+    /**
+     * Crops one region into a pooled bitmap and labels it.
+     *
+     * @param engine The engine labeling the crop
+     * @param source The decoded image
+     * @param box    The region in source pixels
+     * @return The labels of the region
+     * @throws Exception If labeling fails
+     */
+    private static List<LabelResult> labelRegion(LabelingEngine engine, Bitmap source, Rect box) throws Exception
+    {
+        Bitmap crop = ImagePreprocessor.cropRegion(source, box, engine.getInputWidth(), engine.getInputHeight());
+        try
+        {
+            return engine.label(crop);
+        }
+
+        finally
+        {
+            BitmapPool.release(crop);
+        }
+    }
+
+    /**
+     * Waits for a region task to finish, ignoring its outcome.
+     *
+     * @param future The task
+     */
+    private static void awaitQuietly(Future<?> future)
+    {
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                future.get();
+                break;
+            }
+
+            catch (InterruptedException e)
+            {
+                // Keep waiting, the interrupt is restored once the task is done
+                interrupted = true;
+            }
+
+            catch (Exception e)
+            {
+                // Failed, either way it no longer runs
+                break;
+            }
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
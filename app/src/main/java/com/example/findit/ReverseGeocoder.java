@@ -0,0 +1,262 @@
+package com.example.findit;
+
+import android.content.Context;
+import android.location.Address;
+import android.location.Geocoder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ReverseGeocoder turns coordinates into address lines on a background executor.
+ * Results are kept in an LRU cache keyed by the geohash cell of the coordinates and persisted to disk,
+ * so repeated captures in a known place skip the Geocoder entirely, also across sessions.
+ */
+public final class ReverseGeocoder
+{
+    private static final String CACHE_FILE = "geocode_cache.tsv"; // File holding the persisted cache, one "geohash<TAB>address" per line
+    private static final int GEOHASH_PRECISION = 7; // Geohash length, a cell of roughly 150m x 150m
+    private static final int MAX_ENTRIES = 500; // Maximum number of cached cells
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz"; // Geohash alphabet
+
+    private static ReverseGeocoder instance; // The shared instance
+
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(); // Runs geocoding and cache persistence
+    private final Map<String, String> cache = new LinkedHashMap<String, String>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+        {
+            return size() > MAX_ENTRIES;
+        }
+    }; // Access-ordered LRU cache of geohash cell to address line, guarded by itself
+    private boolean loaded; // Whether the cache has been read from disk
+
+    private ReverseGeocoder(Context context)
+    {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Returns the shared ReverseGeocoder.
+     *
+     * @param context Any context
+     * @return The shared instance
+     */
+    public static synchronized ReverseGeocoder getInstance(Context context)
+    {
+        if (instance == null)
+            instance = new ReverseGeocoder(context);
+
+        return instance;
+    }
+
+    /**
+     * Returns the cached address line of the given coordinates without waiting for the geocoder executor.
+     * Reads the persisted cache on first use, so it must not be called on the main thread.
+     *
+     * @param latitude  The latitude
+     * @param longitude The longitude
+     * @return The cached address line, or null if the cell of the coordinates is not cached
+     */
+    public String getCached(double latitude, double longitude)
+    {
+        loadIfNeeded();
+
+        synchronized (cache)
+        {
+            return cache.get(encodeGeohash(latitude, longitude, GEOHASH_PRECISION));
+        }
+    }
+
+    /**
+     * Resolves the given coordinates to an address line on the geocoder executor.
+     *
+     * @param latitude  The latitude
+     * @param longitude The longitude
+     * @return A future holding the address line, or null if the coordinates could not be resolved
+     */
+    public Future<String> resolve(double latitude, double longitude)
+    {
+        return executor.submit(() -> resolveBlocking(latitude, longitude));
+    }
+
+    /**
+     * Resolves the given coordinates, consulting the cache before the Geocoder.
+     * Runs on the geocoder executor.
+     *
+     * @param latitude  The latitude
+     * @param longitude The longitude
+     * @return The address line, or null if the coordinates could not be resolved
+     * @throws IOException If the Geocoder fails
+     */
+    private String resolveBlocking(double latitude, double longitude) throws IOException
+    {
+        loadIfNeeded();
+
+        String cell = encodeGeohash(latitude, longitude, GEOHASH_PRECISION);
+        synchronized (cache)
+        {
+            String cached = cache.get(cell);
+            if (cached != null)
+                return cached;
+        }
+
+        if (!Geocoder.isPresent())
+            return null;
+
+        List<Address> addressList = new Geocoder(context, Locale.getDefault()).getFromLocation(latitude, longitude, 1);
+        if (addressList == null || addressList.isEmpty() || addressList.get(0).getAddressLine(0) == null)
+            return null;
+
+        String address = addressList.get(0).getAddressLine(0);
+        synchronized (cache)
+        {
+            cache.put(cell, address);
+        }
+
+        save();
+        return address;
+    }
+
+    /**
+     * Reads the persisted cache on first use.
+     */
+    private synchronized void loadIfNeeded()
+    {
+        if (loaded)
+            return;
+
+        loaded = true;
+        File file = new File(context.getFilesDir(), CACHE_FILE);
+        if (!file.exists())
+            return;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                int tab = line.indexOf('\t');
+                if (tab > 0)
+                {
+                    synchronized (cache)
+                    {
+                        cache.put(line.substring(0, tab), line.substring(tab + 1));
+                    }
+                }
+            }
+        }
+
+        catch (IOException e)
+        {
+            // A damaged cache is simply rebuilt
+        }
+    }
+
+    /**
+     * Writes the cache to disk, least recently used entries first so the order survives a reload.
+     */
+    private void save()
+    {
+        File file = new File(context.getFilesDir(), CACHE_FILE);
+        File temp = new File(context.getFilesDir(), CACHE_FILE + ".tmp");
+
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)))
+        {
+            synchronized (cache)
+            {
+                for (Map.Entry<String, String> entry : cache.entrySet())
+                {
+                    writer.write(entry.getKey());
+                    writer.write('\t');
+                    writer.write(entry.getValue().replace('\n', ' ').replace('\t', ' '));
+                    writer.newLine();
+                }
+            }
+        }
+
+        catch (IOException e)
+        {
+            temp.delete();
+            return;
+        }
+
+        temp.renameTo(file);
+    }
+
+    /**
+     * Encodes coordinates as a geohash of the given length.
+     *
+     * @param latitude  The latitude
+     * @param longitude The longitude
+     * @param precision The number of characters of the geohash
+     * @return The geohash cell containing the coordinates
+     */
+    static String encodeGeohash(double latitude, double longitude, int precision)
+    {
+        double minLat = -90, maxLat = 90;
+        double minLon = -180, maxLon = 180;
+        StringBuilder geohash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int index = 0;
+
+        while (geohash.length() < precision)
+        {
+            if (evenBit)
+            {
+                double mid = (minLon + maxLon) / 2;
+                if (longitude >= mid)
+                {
+                    index = index * 2 + 1;
+                    minLon = mid;
+                }
+                else
+                {
+                    index = index * 2;
+                    maxLon = mid;
+                }
+            }
+            else
+            {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid)
+                {
+                    index = index * 2 + 1;
+                    minLat = mid;
+                }
+                else
+                {
+                    index = index * 2;
+                    maxLat = mid;
+                }
+            }
+
+            evenBit = !evenBit;
+            if (++bit == 5)
+            {
+                geohash.append(BASE32.charAt(index));
+                bit = 0;
+                index = 0;
+            }
+        }
+
+        return geohash.toString();
+    }
+}
@@ -26,8 +26,9 @@ import androidx.core.content.ContextCompat;
 
 import com.google.firebase.auth.FirebaseAuth;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SearchPageActivity extends AppCompatActivity implements View.OnClickListener {
     // UI elements
@@ -38,9 +39,12 @@ public class SearchPageActivity extends AppCompatActivity implements View.OnClic
     private ActivityResultLauncher<Intent> galleryLauncher;
     private ActivityResultLauncher<String> galleryPermissionLauncher;
     private ActivityResultLauncher<String> locationPermissionLauncher;
+    private ActivityResultLauncher<String> cameraPermissionLauncher;
     private static final String PREFS_NAME = "FindItPrefs";
     private static final String KEY_PERMISSION_DIALOG_SHOWN = "locationPermissionDialogShown";
     private Uri imageUri;
+    private Uri sourceImageUri; // Uri of the displayed image, handed to LabelHandlerService on search
+    private final ExecutorService imageExecutor = Executors.newSingleThreadExecutor(); // Decodes previews off the main thread
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -93,6 +97,11 @@ public class SearchPageActivity extends AppCompatActivity implements View.OnClic
         locationPermissionLauncher = registerForActivityResult(
                 new ActivityResultContracts.RequestPermission(),
                 this::handleLocationPermissionResult);
+
+        // Register for camera permission result
+        cameraPermissionLauncher = registerForActivityResult(
+                new ActivityResultContracts.RequestPermission(),
+                this::handleCameraPermissionResult);
     }
 
     /**
@@ -104,23 +113,19 @@ public class SearchPageActivity extends AppCompatActivity implements View.OnClic
     {
         if (isSuccess)
         {
-            try
-            {
-                imageBitmap = MediaStore.Images.Media.getBitmap(this.getContentResolver(), imageUri);
-                imageView.setImageBitmap(imageBitmap);
-
-                SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-                boolean savePicturesEnabled = prefs.getBoolean("save_pictures_enabled", true);
-
-                if (!savePicturesEnabled)
-                    // Delete the image from the gallery if the user chose not to save it
-                    getContentResolver().delete(imageUri, null, null);
-            }
-
-            catch (IOException e)
-            {
-                Toast.makeText(this, "Failed to process the captured image: " + e.getMessage(), Toast.LENGTH_LONG).show();
-            }
+            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+            boolean savePicturesEnabled = prefs.getBoolean("save_pictures_enabled", true);
+            Uri capturedUri = imageUri;
+
+            loadImage(() -> {
+                if (savePicturesEnabled)
+                    return capturedUri;
+
+                // Keep a cached copy for the search, then delete the image from the gallery
+                Uri cachedUri = ImageHandoff.copyToCache(this, capturedUri);
+                getContentResolver().delete(capturedUri, null, null);
+                return cachedUri;
+            }, "Failed to process the captured image: ");
         }
     }
 
@@ -134,20 +139,58 @@ public class SearchPageActivity extends AppCompatActivity implements View.OnClic
         if (result.getResultCode() == RESULT_OK && result.getData() != null)
         {
             Uri selectedImageUri = result.getData().getData();
+
+            // The read grant on a picked Uri ends with this activity, so a queued search works on a cached copy
             if (selectedImageUri != null)
+                loadImage(() -> ImageHandoff.copyToCache(this, selectedImageUri), "Failed to load image from gallery: ");
+        }
+    }
+
+    /**
+     * Supplies the Uri of a newly selected image. May perform I/O, as it runs on the image executor.
+     */
+    private interface ImageSource
+    {
+        Uri get() throws IOException;
+    }
+
+    /**
+     * Resolve the image source and decode a preview sized for the ImageView on the image executor,
+     * then display it and remember its Uri for the search
+     *
+     * @param source       Supplies the Uri of the selected image
+     * @param errorMessage Prefix of the message shown if the image cannot be loaded
+     */
+    private void loadImage(ImageSource source, String errorMessage)
+    {
+        int previewWidth = imageView.getWidth() > 0 ? imageView.getWidth() : getResources().getDisplayMetrics().widthPixels;
+        int previewHeight = imageView.getHeight() > 0 ? imageView.getHeight() : getResources().getDisplayMetrics().heightPixels;
+
+        imageExecutor.execute(() -> {
+            try
             {
-                try
-                {
-                    imageBitmap = MediaStore.Images.Media.getBitmap(this.getContentResolver(), selectedImageUri);
+                Uri uri = source.get();
+                Bitmap preview = BitmapLoader.decodeSampled(this, uri, previewWidth, previewHeight);
+
+                runOnUiThread(() -> {
+                    if (isDestroyed())
+                    {
+                        ImageHandoff.release(this, uri);
+                        return;
+                    }
+
+                    releaseSourceImage();
+                    sourceImageUri = uri;
+                    imageBitmap = preview;
                     imageView.setImageBitmap(imageBitmap);
-                }
+                });
+            }
 
-                catch (IOException e)
-                {
-                    Toast.makeText(this, "Failed to load image from gallery: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                }
+            catch (IOException | SecurityException e)
+            {
+                runOnUiThread(() -> Toast.makeText(this, errorMessage + e.getMessage(), Toast.LENGTH_LONG).show());
             }
-        }
+        });
     }
 
     /**
@@ -176,6 +219,19 @@ public class SearchPageActivity extends AppCompatActivity implements View.OnClic
             Toast.makeText(this, "Location permission denied. Continuing without location.", Toast.LENGTH_SHORT).show();
     }
 
+    /**
+     * Handle the result of the camera permission request
+     *
+     * @param isGranted true if the permission was granted, false otherwise
+     */
+    private void handleCameraPermissionResult(boolean isGranted)
+    {
+        if (isGranted)
+            takePictureFromCamera();
+        else
+            Toast.makeText(this, "Camera permission denied.", Toast.LENGTH_SHORT).show();
+    }
+
     /**
      * Open the gallery to select an image
      */
@@ -195,6 +251,13 @@ public class SearchPageActivity extends AppCompatActivity implements View.OnClic
      */
     private void takePictureFromCamera()
     {
+        // The app declares the camera permission for live search, so the camera app may only be used once it is granted
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED)
+        {
+            cameraPermissionLauncher.launch(Manifest.permission.CAMERA);
+            return;
+        }
+
         // Create an empty ContentValues object
         ContentValues values = new ContentValues();
         // Insert the new content into the MediaStore and get the URI
@@ -247,23 +310,63 @@ public class SearchPageActivity extends AppCompatActivity implements View.OnClic
     }
 
     /**
-     * Handle the search operation by starting the LabelHandlerService with the image data
+     * Handle the search operation by starting the LabelHandlerService with the image Uri.
+     * The service decodes the image itself, so nothing is encoded on the UI thread.
      */
     private void handleSearch()
     {
-        if (imageBitmap != null)
+        if (sourceImageUri != null)
         {
-            Intent serviceIntent = new Intent(this, LabelHandlerService.class);
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            imageBitmap.compress(Bitmap.CompressFormat.JPEG, 100, stream);
-            byte[] byteArray = stream.toByteArray();
-            serviceIntent.putExtra(LabelHandlerService.EXTRA_IMAGE, byteArray);
-            startService(serviceIntent);
+            Uri searchUri = sourceImageUri;
+
+            imageExecutor.execute(() -> {
+                try
+                {
+                    // Cached copies are deleted by the service once processed, so each search gets its own
+                    Uri handoffUri = ImageHandoff.isCacheFile(this, searchUri)
+                            ? ImageHandoff.copyToCache(this, searchUri)
+                            : searchUri;
+
+                    Intent serviceIntent = new Intent(this, LabelHandlerService.class);
+                    serviceIntent.setData(handoffUri);
+                    serviceIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                    startService(serviceIntent);
+                }
+
+                catch (IOException e)
+                {
+                    runOnUiThread(() -> {
+                        if (!isDestroyed())
+                            Toast.makeText(this, "Failed to prepare the image for search: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    });
+                }
+            });
         }
         else
             Toast.makeText(SearchPageActivity.this, "No image to search.", Toast.LENGTH_SHORT).show();
     }
 
+    /**
+     * Delete the cached copy of the currently selected image, if it has one
+     */
+    private void releaseSourceImage()
+    {
+        ImageHandoff.release(this, sourceImageUri);
+        sourceImageUri = null;
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+
+        // Deleted after the queued work, so a search still copying the image can finish reading it
+        Uri source = sourceImageUri;
+        sourceImageUri = null;
+        imageExecutor.execute(() -> ImageHandoff.release(this, source));
+        imageExecutor.shutdown();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu)
     {
@@ -282,6 +385,12 @@ public class SearchPageActivity extends AppCompatActivity implements View.OnClic
             return true;
         }
 
+        if (id == R.id.action_live_label)
+        {
+            startActivity(new Intent(SearchPageActivity.this, LiveLabelActivity.class));
+            return true;
+        }
+
         if (id == R.id.action_search_history)
         {
             startActivity(new Intent(SearchPageActivity.this, HistoryActivity.class));
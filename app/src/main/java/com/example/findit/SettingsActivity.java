@@ -18,22 +18,26 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
 
-public class SettingsActivity extends AppCompatActivity implements CompoundButton.OnCheckedChangeListener, View.OnClickListener
+public class SettingsActivity extends AppCompatActivity implements CompoundButton.OnCheckedChangeListener, View.OnClickListener, HistoryClearJob.Listener
 {
 
     private Switch switchNotifications;
     private Switch switchSavePictures;
+    private Switch switchUploadWebp;
+    private Switch switchDetectObjects;
     private Button btnEnablePermissions;
+    private Button btnLabelingEngine;
     private Button btnResetPassword;
     private Button btnClearHistory;
     private Button btnReturn;
 
     private Button btnEditProfile;
+    private CharSequence clearHistoryLabel; // Original text of the clear history button, shown again once a clear finishes
 
     private static final String PREFS_NAME = "FindItPrefs";
+    private static final String[] ENGINE_NAMES = {FirebaseLabelingEngine.NAME, FakeLabelingEngine.NAME}; // Engines offered, in display order
+    private static final String[] ENGINE_TITLES = {"Firebase (on-device)", "Fake (deterministic, for testing)"}; // Display names of ENGINE_NAMES
 
 
     @Override
@@ -49,7 +53,10 @@ public class SettingsActivity extends AppCompatActivity implements CompoundButto
         // Initialize UI elements
         switchNotifications = findViewById(R.id.switchNotificationsID);
         switchSavePictures = findViewById(R.id.switchSavePicturesID);
+        switchUploadWebp = findViewById(R.id.switchUploadWebpID);
+        switchDetectObjects = findViewById(R.id.switchDetectObjectsID);
         btnEnablePermissions = findViewById(R.id.btnEnablePermissionsID);
+        btnLabelingEngine = findViewById(R.id.btnLabelingEngineID);
         btnResetPassword = findViewById(R.id.btnSettingsResetPasswordID);
         btnClearHistory = findViewById(R.id.btnClearHistoryID);
         btnReturn = findViewById(R.id.btnSettingsReturnID);
@@ -59,18 +66,31 @@ public class SettingsActivity extends AppCompatActivity implements CompoundButto
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
         boolean notificationsEnabled = prefs.getBoolean("notifications_enabled", true);
         boolean savePicturesEnabled = prefs.getBoolean("save_pictures_enabled", true);
+        boolean uploadWebpEnabled = UploadEncoder.Format.WEBP.name().equals(prefs.getString(UploadEncoder.KEY_UPLOAD_FORMAT, UploadEncoder.Format.JPEG.name()));
 
         switchNotifications.setChecked(notificationsEnabled);
         switchSavePictures.setChecked(savePicturesEnabled);
+        switchUploadWebp.setChecked(uploadWebpEnabled);
+        switchDetectObjects.setChecked(prefs.getBoolean(LabelHandlerService.KEY_DETECTION_MODE, false));
+        updateEngineButton();
 
         // Set listeners
         switchNotifications.setOnCheckedChangeListener(this);
         switchSavePictures.setOnCheckedChangeListener(this);
+        switchUploadWebp.setOnCheckedChangeListener(this);
+        switchDetectObjects.setOnCheckedChangeListener(this);
         btnEnablePermissions.setOnClickListener(this);
+        btnLabelingEngine.setOnClickListener(this);
         btnResetPassword.setOnClickListener(this);
         btnClearHistory.setOnClickListener(this);
         btnReturn.setOnClickListener(this);
         btnEditProfile.setOnClickListener(this);
+
+        // Continue a clear that was interrupted before it finished
+        clearHistoryLabel = btnClearHistory.getText();
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (currentUser != null)
+            HistoryClearJob.resumeIfPending(this, currentUser.getEmail());
     }
 
     @Override
@@ -91,6 +111,18 @@ public class SettingsActivity extends AppCompatActivity implements CompoundButto
             Toast.makeText(SettingsActivity.this, isChecked ? "Pictures will be saved in gallery." : "Pictures will not be saved in gallery.", Toast.LENGTH_SHORT).show();
         }
 
+        else if (buttonView.getId() == R.id.switchUploadWebpID)
+        {
+            editor.putString(UploadEncoder.KEY_UPLOAD_FORMAT, (isChecked ? UploadEncoder.Format.WEBP : UploadEncoder.Format.JPEG).name());
+            Toast.makeText(SettingsActivity.this, isChecked ? "Pictures will be uploaded as WebP." : "Pictures will be uploaded as JPEG.", Toast.LENGTH_SHORT).show();
+        }
+
+        else if (buttonView.getId() == R.id.switchDetectObjectsID)
+        {
+            editor.putBoolean(LabelHandlerService.KEY_DETECTION_MODE, isChecked);
+            Toast.makeText(SettingsActivity.this, isChecked ? "Every object in a picture will be labeled." : "Pictures will be labeled as a whole.", Toast.LENGTH_SHORT).show();
+        }
+
         editor.apply();
     }
 
@@ -113,6 +145,12 @@ public class SettingsActivity extends AppCompatActivity implements CompoundButto
             return;
         }
 
+        if (v.getId() == R.id.btnLabelingEngineID)
+        {
+            showLabelingEngineDialog();
+            return;
+        }
+
         if (v.getId() == R.id.btnSettingsResetPasswordID)
         {
             resetPassword();
@@ -138,6 +176,43 @@ public class SettingsActivity extends AppCompatActivity implements CompoundButto
         }
     }
 
+    /**
+     * Let the user choose the engine that labels pictures
+     */
+    private void showLabelingEngineDialog()
+    {
+        String current = LabelingEngineProvider.getEngineName(this);
+        int checked = 0;
+        for (int i = 0; i < ENGINE_NAMES.length; i++)
+            if (ENGINE_NAMES[i].equals(current))
+                checked = i;
+
+        new AlertDialog.Builder(this)
+                .setTitle("Labeling engine")
+                .setSingleChoiceItems(ENGINE_TITLES, checked, (dialog, which) ->
+                {
+                    dialog.dismiss();
+                    getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit()
+                            .putString(LabelingEngineProvider.KEY_LABELING_ENGINE, ENGINE_NAMES[which])
+                            .apply();
+                    updateEngineButton();
+                    Toast.makeText(SettingsActivity.this, "Pictures will be labeled with " + ENGINE_TITLES[which] + ".", Toast.LENGTH_SHORT).show();
+                })
+                .setNegativeButton("Cancel", (dialog, which) -> dialog.dismiss())
+                .show();
+    }
+
+    /**
+     * Show the current engine on its button
+     */
+    private void updateEngineButton()
+    {
+        String current = LabelingEngineProvider.getEngineName(this);
+        for (int i = 0; i < ENGINE_NAMES.length; i++)
+            if (ENGINE_NAMES[i].equals(current))
+                btnLabelingEngine.setText("Labeling engine: " + ENGINE_TITLES[i]);
+    }
+
     /**
      * Direct the user to the app settings in order to enable permissions
      */
@@ -184,7 +259,8 @@ public class SettingsActivity extends AppCompatActivity implements CompoundButto
     }
 
     /**
-     * Clear the search history by deleting all images from the logged-in user's storage
+     * Clear the search history of the logged-in user: the local history is cleared at once,
+     * while the images and capture records are deleted by a resumable background job
      */
     private void clearSearchHistory()
     {
@@ -194,15 +270,46 @@ public class SettingsActivity extends AppCompatActivity implements CompoundButto
             String email = currentUser.getEmail();
             if (email != null)
             {
-                StorageReference userImagesRef = FirebaseStorage.getInstance().getReference().child("images/" + email);
-                userImagesRef.listAll().addOnSuccessListener(listResult -> {
-                    for (StorageReference item : listResult.getItems())
-                        item.delete().addOnSuccessListener(aVoid -> Toast.makeText(SettingsActivity.this, "Search history cleared.", Toast.LENGTH_SHORT).show()).addOnFailureListener(e -> Toast.makeText(SettingsActivity.this, "Failed to delete image: " + e.getMessage(), Toast.LENGTH_SHORT).show());
-
-                }).addOnFailureListener(e -> Toast.makeText(SettingsActivity.this, "Failed to list images: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+                HistoryClearJob.start(this, email);
+                btnClearHistory.setEnabled(false);
             }
         }
         else
             Toast.makeText(SettingsActivity.this, "User not authenticated.", Toast.LENGTH_SHORT).show();
     }
+
+    @Override
+    public void onClearProgress(int deleted)
+    {
+        btnClearHistory.setText("Clearing history (" + deleted + " deleted)");
+    }
+
+    @Override
+    public void onClearFinished(int deleted, int failed, Exception error)
+    {
+        btnClearHistory.setEnabled(true);
+        btnClearHistory.setText(clearHistoryLabel);
+
+        if (error != null)
+            Toast.makeText(SettingsActivity.this, "Clearing history stopped, it will resume later: " + error.getMessage(), Toast.LENGTH_LONG).show();
+        else if (failed > 0)
+            Toast.makeText(SettingsActivity.this, failed + " items could not be deleted, they will be retried later.", Toast.LENGTH_LONG).show();
+        else
+            Toast.makeText(SettingsActivity.this, "Search history cleared (" + deleted + " deleted).", Toast.LENGTH_SHORT).show();
+    }
+
+    @Override
+    protected void onResume()
+    {
+        super.onResume();
+        HistoryClearJob.setListener(this);
+        btnClearHistory.setEnabled(!HistoryClearJob.isRunning());
+    }
+
+    @Override
+    protected void onPause()
+    {
+        super.onPause();
+        HistoryClearJob.setListener(null);
+    }
 }
@@ -0,0 +1,115 @@
+package com.example.findit;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * SharedResource holds one instance of an expensive resource, such as a model, shared by every caller in the app process.
+ * Callers acquire the instance before each use and release it afterwards. Retiring the instance, e.g. when memory is trimmed,
+ * only closes it once its last user released it, so a model is never closed while a worker is still running it.
+ * The next acquire after a retirement creates a new instance.
+ *
+ * @param <T> The type of the shared instance
+ */
+public final class SharedResource<T>
+{
+    /**
+     * Creates the shared instance.
+     *
+     * @param <T> The type of the shared instance
+     */
+    public interface Factory<T>
+    {
+        T create();
+    }
+
+    /**
+     * Closes an instance that is no longer shared or used.
+     *
+     * @param <T> The type of the shared instance
+     */
+    public interface Closer<T>
+    {
+        void close(T instance);
+    }
+
+    private final Closer<T> closer; // Closes retired instances once idle
+    private final Map<T, Integer> users = new IdentityHashMap<>(); // Users of the current instance and of retired instances still in use
+    private T current; // The instance handed out by acquire, or null until first use or after a retirement
+
+    /**
+     * Constructor for SharedResource.
+     *
+     * @param closer Closes retired instances once idle
+     */
+    public SharedResource(Closer<T> closer)
+    {
+        this.closer = closer;
+    }
+
+    /**
+     * Returns the shared instance, creating it with the given factory if there is none.
+     * Every call must be matched by a call to release() once the instance is no longer used.
+     *
+     * @param factory Creates the instance if needed
+     * @return The shared instance
+     */
+    public synchronized T acquire(Factory<T> factory)
+    {
+        if (current == null)
+        {
+            current = factory.create();
+            users.put(current, 0);
+        }
+
+        users.put(current, users.get(current) + 1);
+        return current;
+    }
+
+    /**
+     * Returns the shared instance without acquiring it.
+     *
+     * @return The shared instance, or null if there is none
+     */
+    public synchronized T peek()
+    {
+        return current;
+    }
+
+    /**
+     * Releases an instance returned by acquire(). A retired instance is closed once its last user released it.
+     *
+     * @param instance The acquired instance
+     */
+    public synchronized void release(T instance)
+    {
+        Integer count = users.get(instance);
+        if (count == null)
+            return;
+
+        if (count > 1 || instance == current)
+            users.put(instance, count - 1);
+        else
+        {
+            users.remove(instance);
+            closer.close(instance);
+        }
+    }
+
+    /**
+     * Stops handing out the shared instance. It is closed right away if idle, otherwise once its last user released it.
+     */
+    public synchronized void retire()
+    {
+        if (current == null)
+            return;
+
+        T retired = current;
+        current = null;
+        if (users.get(retired) == 0)
+        {
+            users.remove(retired);
+            closer.close(retired);
+        }
+    }
+}
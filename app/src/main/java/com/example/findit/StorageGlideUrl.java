@@ -0,0 +1,83 @@
+package com.example.findit;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.model.GlideUrl;
+
+/**
+ * StorageGlideUrl loads a Firebase Storage download URL through Glide while keying the caches
+ * by the Storage path and generation of the file instead of the URL.
+ * Download URLs carry access tokens that change when they are revoked, which would otherwise
+ * invalidate cached images that did not change, and keep serving images that were overwritten under the same URL.
+ */
+public class StorageGlideUrl extends GlideUrl
+{
+    private final String cacheKey; // Storage path and generation of the file
+
+    /**
+     * Constructor for StorageGlideUrl.
+     *
+     * @param url         The download URL of the file
+     * @param storagePath The path of the file in Firebase Storage
+     * @param generation  The Storage generation of the file, or null if unknown
+     */
+    public StorageGlideUrl(String url, String storagePath, String generation)
+    {
+        super(url);
+        this.cacheKey = generation != null ? storagePath + "#" + generation : storagePath;
+    }
+
+    /**
+     * Returns the model loading the thumbnail of a history row, or the original if the capture has no thumbnail.
+     *
+     * @param imageData The history row
+     * @return The model to load, or null if the row has no image URL
+     */
+    public static StorageGlideUrl thumbnailOf(ImageData imageData)
+    {
+        if (imageData.getThumbnailUrl() == null)
+            return originalOf(imageData);
+
+        // The thumbnail is a separate Storage object, overwritten independently of the original
+        return new StorageGlideUrl(imageData.getThumbnailUrl(), CaptureRecord.thumbnailPathOf(imageData.getStoragePath()), imageData.getThumbnailGeneration());
+    }
+
+    /**
+     * Returns the model loading the original image of a history row.
+     *
+     * @param imageData The history row
+     * @return The model to load, or null if the row has no image URL
+     */
+    public static StorageGlideUrl originalOf(ImageData imageData)
+    {
+        if (imageData.getImageUrl() == null)
+            return null;
+
+        return new StorageGlideUrl(imageData.getImageUrl(), imageData.getStoragePath(), imageData.getGeneration());
+    }
+
+    @Override
+    public String getCacheKey()
+    {
+        return cacheKey;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return o instanceof StorageGlideUrl && cacheKey.equals(((StorageGlideUrl) o).cacheKey);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return cacheKey.hashCode();
+    }
+
+    @NonNull
+    @Override
+    public String toString()
+    {
+        return cacheKey;
+    }
+}
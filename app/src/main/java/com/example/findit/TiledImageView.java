@@ -0,0 +1,509 @@
+package com.example.findit;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AttributeSet;
+import android.util.LruCache;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * TiledImageView shows a large image file with pinch-zoom and panning while decoding only what is visible.
+ * A preview of the whole image, sampled down to the screen size, is drawn first.
+ * When the zoom needs more detail than the preview has, the visible part is decoded from the file
+ * with a BitmapRegionDecoder, in tiles at the sample size matching the zoom level.
+ * Tiles are kept in an LruCache with a fixed byte budget, so memory stays bounded at any zoom level.
+ */
+public class TiledImageView extends View
+{
+    private static final int TILE_SIZE = 512; // Size in pixels of a decoded tile
+    private static final float MAX_ZOOM = 8f; // Maximum zoom relative to the image fitting the view
+    private static final float DOUBLE_TAP_ZOOM = 3f; // Zoom applied by a double tap
+    private static final int MAX_TILE_CACHE_BYTES = 32 * 1024 * 1024; // Upper bound of the tile cache
+
+    private static final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor(); // Decodes previews and tiles, shared by all viewers
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper()); // Hands decoded bitmaps to the main thread
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Matrix matrix = new Matrix(); // Maps image pixels to view pixels
+    private final Matrix inverse = new Matrix(); // Maps view pixels to image pixels
+    private final RectF visibleRect = new RectF(); // Part of the image that is on screen, in image pixels
+    private final RectF tileRect = new RectF(); // Scratch rectangle a tile is drawn into
+    private final Set<String> pendingTiles = new HashSet<>(); // Tiles queued for decoding, only accessed on the main thread
+    private final LruCache<String, Bitmap> tileCache; // Decoded tiles keyed by sample size, column and row
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+
+    private BitmapRegionDecoder decoder; // Decoder of the shown file, only used on the decode executor once set
+    private Bitmap preview; // The whole image, sampled down to about the screen size
+    private int previewSampleSize; // Sample size the preview was decoded at
+    private int imageWidth, imageHeight; // Size of the image as stored in the file
+    private int rotation; // Clockwise rotation in degrees from the EXIF orientation
+    private volatile int generation; // Incremented whenever the image changes, so results for an older image are dropped
+    private float zoom = 1f; // Zoom relative to the image fitting the view
+    private volatile TileWindow tileWindow; // Visible part of the image and wanted sample size, published by the main thread for the decode thread
+    private float translateX, translateY; // Offset of the displayed image in view pixels
+
+    public TiledImageView(Context context)
+    {
+        this(context, null);
+    }
+
+    public TiledImageView(Context context, @Nullable AttributeSet attrs)
+    {
+        super(context, attrs);
+
+        int cacheBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, MAX_TILE_CACHE_BYTES);
+        tileCache = new LruCache<String, Bitmap>(cacheBytes)
+        {
+            @Override
+            protected int sizeOf(String key, Bitmap tile)
+            {
+                return tile.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldTile, Bitmap newTile)
+            {
+                // Tiles are only drawn and evicted on the main thread, so an evicted tile is never in use
+                oldTile.recycle();
+            }
+        };
+
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener()
+        {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector)
+            {
+                zoomBy(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
+
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener()
+        {
+            @Override
+            public boolean onDown(MotionEvent e)
+            {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY)
+            {
+                translateX -= distanceX;
+                translateY -= distanceY;
+                updateMatrix();
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e)
+            {
+                zoomBy((zoom > 1f ? 1f : DOUBLE_TAP_ZOOM) / zoom, e.getX(), e.getY());
+                return true;
+            }
+
+            @Override
+            public boolean onSingleTapConfirmed(MotionEvent e)
+            {
+                return performClick();
+            }
+        });
+    }
+
+    /**
+     * Shows the image stored in the given file. The file is decoded in the background.
+     *
+     * @param file The image file, which must stay in place while it is shown
+     */
+    public void setImageFile(File file)
+    {
+        recycle();
+        int imageGeneration = generation;
+        int screenWidth = getResources().getDisplayMetrics().widthPixels;
+        int screenHeight = getResources().getDisplayMetrics().heightPixels;
+
+        decodeExecutor.execute(() -> {
+            try
+            {
+                BitmapRegionDecoder regionDecoder = BitmapRegionDecoder.newInstance(file.getAbsolutePath(), false);
+                int width = regionDecoder.getWidth();
+                int height = regionDecoder.getHeight();
+
+                // The preview holds enough pixels to show the whole image fitting the screen, in either orientation
+                float fit = Math.min((float) Math.max(screenWidth, screenHeight) / Math.max(width, height),
+                        (float) Math.min(screenWidth, screenHeight) / Math.min(width, height));
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = sampleSizeForScale(fit);
+                options.inPreferredConfig = Bitmap.Config.RGB_565;
+                Bitmap previewBitmap = regionDecoder.decodeRegion(new Rect(0, 0, width, height), options);
+                int degrees = readRotation(file);
+
+                mainHandler.post(() -> {
+                    if (imageGeneration != generation || previewBitmap == null)
+                    {
+                        if (previewBitmap != null)
+                            previewBitmap.recycle();
+                        regionDecoder.recycle();
+                        return;
+                    }
+
+                    decoder = regionDecoder;
+                    preview = previewBitmap;
+                    previewSampleSize = options.inSampleSize;
+                    imageWidth = width;
+                    imageHeight = height;
+                    rotation = degrees;
+                    zoom = 1f;
+                    updateMatrix();
+                });
+            }
+
+            catch (IOException e)
+            {
+                // The view stays empty, the caller shows the image elsewhere
+            }
+        });
+    }
+
+    /**
+     * Releases the shown image, its decoder and all tiles.
+     */
+    public void recycle()
+    {
+        generation++;
+        pendingTiles.clear();
+        tileCache.evictAll();
+        tileWindow = null;
+
+        if (preview != null)
+        {
+            preview.recycle();
+            preview = null;
+        }
+
+        if (decoder != null)
+        {
+            // Tiles still queued finish first, then the decoder is released
+            BitmapRegionDecoder oldDecoder = decoder;
+            decodeExecutor.execute(oldDecoder::recycle);
+            decoder = null;
+        }
+
+        invalidate();
+    }
+
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        super.onDetachedFromWindow();
+        recycle();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh)
+    {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateMatrix();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event)
+    {
+        boolean handled = scaleDetector.onTouchEvent(event);
+        handled |= gestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    public boolean performClick()
+    {
+        return super.performClick();
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas)
+    {
+        super.onDraw(canvas);
+        if (preview == null)
+            return;
+
+        canvas.save();
+        canvas.concat(matrix);
+
+        tileRect.set(0, 0, imageWidth, imageHeight);
+        canvas.drawBitmap(preview, null, tileRect, paint);
+
+        // Once the preview has too few pixels for the zoom, draw the visible tiles over it
+        int sampleSize = sampleSizeForScale(fitScale() * zoom);
+        if (sampleSize < previewSampleSize)
+            drawTiles(canvas, sampleSize);
+
+        canvas.restore();
+    }
+
+    /**
+     * Draws the tiles covering the visible part of the image, and queues the missing ones for decoding.
+     *
+     * @param canvas     The canvas, already transformed to image pixels
+     * @param sampleSize The sample size matching the current zoom
+     */
+    private void drawTiles(Canvas canvas, int sampleSize)
+    {
+        visibleRect.set(0, 0, getWidth(), getHeight());
+        inverse.mapRect(visibleRect);
+
+        int span = TILE_SIZE * sampleSize; // Image pixels covered by one tile
+        int firstColumn = Math.max(0, (int) (visibleRect.left / span));
+        int lastColumn = Math.min((imageWidth - 1) / span, (int) (visibleRect.right / span));
+        int firstRow = Math.max(0, (int) (visibleRect.top / span));
+        int lastRow = Math.min((imageHeight - 1) / span, (int) (visibleRect.bottom / span));
+
+        for (int row = firstRow; row <= lastRow; row++)
+        {
+            for (int column = firstColumn; column <= lastColumn; column++)
+            {
+                String key = sampleSize + "/" + column + "/" + row;
+                Bitmap tile = tileCache.get(key);
+                if (tile == null)
+                {
+                    requestTile(key, sampleSize, column, row);
+                    continue;
+                }
+
+                tileRect.set(column * span, row * span,
+                        Math.min((column + 1) * span, imageWidth), Math.min((row + 1) * span, imageHeight));
+                canvas.drawBitmap(tile, null, tileRect, paint);
+            }
+        }
+    }
+
+    /**
+     * Queues a tile for decoding unless it is queued already.
+     * Tiles that are no longer visible by the time they are reached are skipped.
+     *
+     * @param key        The cache key of the tile
+     * @param sampleSize The sample size to decode at
+     * @param column     The column of the tile
+     * @param row        The row of the tile
+     */
+    private void requestTile(String key, int sampleSize, int column, int row)
+    {
+        if (!pendingTiles.add(key))
+            return;
+
+        BitmapRegionDecoder regionDecoder = decoder;
+        int tileGeneration = generation;
+        int span = TILE_SIZE * sampleSize;
+        Rect region = new Rect(column * span, row * span,
+                Math.min((column + 1) * span, imageWidth), Math.min((row + 1) * span, imageHeight));
+
+        decodeExecutor.execute(() -> {
+            if (tileGeneration != generation || !isTileWanted(sampleSize, region))
+            {
+                mainHandler.post(() -> pendingTiles.remove(key));
+                return;
+            }
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            Bitmap tile = regionDecoder.decodeRegion(region, options);
+
+            mainHandler.post(() -> {
+                pendingTiles.remove(key);
+                if (tile == null)
+                    return;
+
+                if (tileGeneration != generation)
+                {
+                    tile.recycle();
+                    return;
+                }
+
+                tileCache.put(key, tile);
+                invalidate();
+            });
+        });
+    }
+
+    /**
+     * Checks whether a queued tile is still needed for the current zoom and position.
+     * Called on the decode thread, it only reads the window last published by the main thread,
+     * which is at most one gesture step old, a stale answer only costs a skipped or an extra tile.
+     *
+     * @param sampleSize The sample size of the tile
+     * @param region     The image pixels covered by the tile
+     * @return true if the tile should still be decoded, false otherwise
+     */
+    private boolean isTileWanted(int sampleSize, Rect region)
+    {
+        TileWindow window = tileWindow;
+        return window != null && sampleSize == window.sampleSize
+                && RectF.intersects(window.visible, new RectF(region));
+    }
+
+    /**
+     * Zooms around the given focus point, keeping the zoom between fitting the view and MAX_ZOOM.
+     *
+     * @param factor The zoom factor to apply
+     * @param focusX The x coordinate of the focus in view pixels
+     * @param focusY The y coordinate of the focus in view pixels
+     */
+    private void zoomBy(float factor, float focusX, float focusY)
+    {
+        float newZoom = Math.max(1f, Math.min(MAX_ZOOM, zoom * factor));
+        float applied = newZoom / zoom;
+
+        translateX = focusX - (focusX - translateX) * applied;
+        translateY = focusY - (focusY - translateY) * applied;
+        zoom = newZoom;
+        updateMatrix();
+    }
+
+    /**
+     * Rebuilds the image-to-view matrix from the rotation, zoom and offset.
+     * The offset is constrained so the image stays centered when it is smaller than the view
+     * and its edges never move inside the view when it is larger.
+     */
+    private void updateMatrix()
+    {
+        if (preview == null || getWidth() == 0 || getHeight() == 0)
+        {
+            invalidate();
+            return;
+        }
+
+        float scale = fitScale() * zoom;
+        float scaledWidth = orientedWidth() * scale;
+        float scaledHeight = orientedHeight() * scale;
+
+        translateX = scaledWidth <= getWidth() ? (getWidth() - scaledWidth) / 2 : Math.max(getWidth() - scaledWidth, Math.min(0, translateX));
+        translateY = scaledHeight <= getHeight() ? (getHeight() - scaledHeight) / 2 : Math.max(getHeight() - scaledHeight, Math.min(0, translateY));
+
+        matrix.reset();
+        matrix.postRotate(rotation);
+        if (rotation == 90)
+            matrix.postTranslate(imageHeight, 0);
+        else if (rotation == 180)
+            matrix.postTranslate(imageWidth, imageHeight);
+        else if (rotation == 270)
+            matrix.postTranslate(0, imageWidth);
+
+        matrix.postScale(scale, scale);
+        matrix.postTranslate(translateX, translateY);
+        matrix.invert(inverse);
+
+        RectF visible = new RectF(0, 0, getWidth(), getHeight());
+        inverse.mapRect(visible);
+        tileWindow = new TileWindow(visible, sampleSizeForScale(scale));
+
+        invalidate();
+    }
+
+    /**
+     * Returns the scale at which the whole image fits the view.
+     *
+     * @return The fitting scale, in view pixels per image pixel
+     */
+    private float fitScale()
+    {
+        if (imageWidth == 0 || imageHeight == 0)
+            return 1f;
+
+        return Math.min((float) getWidth() / orientedWidth(), (float) getHeight() / orientedHeight());
+    }
+
+    private int orientedWidth()
+    {
+        return rotation == 90 || rotation == 270 ? imageHeight : imageWidth;
+    }
+
+    private int orientedHeight()
+    {
+        return rotation == 90 || rotation == 270 ? imageWidth : imageHeight;
+    }
+
+    /**
+     * Returns the largest power-of-two sample size that still gives at least one decoded pixel per view pixel.
+     *
+     * @param scale The current scale, in view pixels per image pixel
+     * @return The sample size to decode tiles at
+     */
+    private static int sampleSizeForScale(float scale)
+    {
+        int sampleSize = 1;
+        while (scale * sampleSize * 2 <= 1f)
+            sampleSize *= 2;
+
+        return sampleSize;
+    }
+
+    /**
+     * Reads the clockwise rotation of the image from its EXIF orientation.
+     *
+     * @param file The image file
+     * @return The rotation in degrees, 0 if there is none or it cannot be read
+     */
+    private static int readRotation(File file)
+    {
+        try
+        {
+            switch (new ExifInterface(file.getAbsolutePath()).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL))
+            {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        }
+
+        catch (IOException e)
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * The part of the image on screen and the sample size its tiles are decoded at, as last laid out on the main thread.
+     * Never modified once published, so the decode thread can read it without copying view state.
+     */
+    private static final class TileWindow
+    {
+        final RectF visible; // Part of the image that is on screen, in image pixels
+        final int sampleSize; // Sample size of the tiles drawn at the current zoom
+
+        TileWindow(RectF visible, int sampleSize)
+        {
+            this.visible = visible;
+            this.sampleSize = sampleSize;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.findit;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * UploadEncoder prepares a captured image for upload to Firebase Storage in a single pass.
+ * The output format, quality and maximum long edge are read from the app preferences.
+ * Images that are already compressed in the target format and small enough are uploaded as-is, without re-encoding.
+ */
+public class UploadEncoder
+{
+    public static final String KEY_UPLOAD_FORMAT = "upload_format"; // Preference key for the upload format (JPEG or WEBP)
+    public static final String KEY_UPLOAD_QUALITY = "upload_quality"; // Preference key for the compression quality (0-100)
+    public static final String KEY_UPLOAD_MAX_EDGE = "upload_max_edge"; // Preference key for the maximum long edge in pixels
+
+    private static final int DEFAULT_QUALITY = 85; // Default compression quality
+    private static final int DEFAULT_MAX_EDGE = 2048; // Default maximum long edge in pixels
+    private static final int THUMBNAIL_QUALITY = 80; // Compression quality of thumbnails
+
+    /**
+     * Image formats supported for upload.
+     */
+    public enum Format
+    {
+        JPEG("image/jpeg", "jpg"),
+        WEBP("image/webp", "webp");
+
+        private final String mimeType;
+        private final String extension;
+
+        Format(String mimeType, String extension)
+        {
+            this.mimeType = mimeType;
+            this.extension = extension;
+        }
+
+        public String getMimeType()
+        {
+            return mimeType;
+        }
+
+        public String getExtension()
+        {
+            return extension;
+        }
+
+        /**
+         * Returns the Bitmap compress format matching this upload format.
+         *
+         * @return The compress format to encode with
+         */
+        @SuppressWarnings("deprecation")
+        Bitmap.CompressFormat toCompressFormat()
+        {
+            if (this == JPEG)
+                return Bitmap.CompressFormat.JPEG;
+
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+        }
+    }
+
+    /**
+     * The result of preparing an image for upload.
+     * Holds either the Uri of the original file (pass-through) or the newly encoded bytes.
+     */
+    public static class Payload
+    {
+        private final Uri sourceUri;
+        private final byte[] bytes;
+        private final Format format;
+        private final int width;
+        private final int height;
+
+        private Payload(Uri sourceUri, byte[] bytes, Format format, int width, int height)
+        {
+            this.sourceUri = sourceUri;
+            this.bytes = bytes;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+        }
+
+        public boolean isPassThrough()
+        {
+            return sourceUri != null;
+        }
+
+        public Uri getSourceUri()
+        {
+            return sourceUri;
+        }
+
+        public byte[] getBytes()
+        {
+            return bytes;
+        }
+
+        public Format getFormat()
+        {
+            return format;
+        }
+
+        public int getWidth()
+        {
+            return width;
+        }
+
+        public int getHeight()
+        {
+            return height;
+        }
+    }
+
+    private final Format format;
+    private final int quality;
+    private final int maxLongEdge;
+
+    /**
+     * Constructor for UploadEncoder.
+     *
+     * @param format      The format to encode with
+     * @param quality     The compression quality (0-100)
+     * @param maxLongEdge The maximum long edge of the uploaded image in pixels
+     */
+    public UploadEncoder(Format format, int quality, int maxLongEdge)
+    {
+        this.format = format;
+        this.quality = Math.max(0, Math.min(100, quality));
+        this.maxLongEdge = maxLongEdge;
+    }
+
+    /**
+     * Creates an UploadEncoder configured from the given preferences, falling back to the defaults.
+     *
+     * @param prefs The app preferences
+     * @return The configured encoder
+     */
+    public static UploadEncoder fromPreferences(SharedPreferences prefs)
+    {
+        Format format;
+        try
+        {
+            format = Format.valueOf(prefs.getString(KEY_UPLOAD_FORMAT, Format.JPEG.name()));
+        }
+
+        catch (IllegalArgumentException e)
+        {
+            format = Format.JPEG;
+        }
+
+        return new UploadEncoder(format,
+                prefs.getInt(KEY_UPLOAD_QUALITY, DEFAULT_QUALITY),
+                prefs.getInt(KEY_UPLOAD_MAX_EDGE, DEFAULT_MAX_EDGE));
+    }
+
+    /**
+     * Prepares the image behind the given Uri for upload.
+     * Must not be called on the main thread.
+     *
+     * @param context The context used to resolve the Uri
+     * @param uri     The Uri of the image
+     * @return The payload to upload
+     * @throws IOException If the image cannot be read or decoded
+     */
+    public Payload encode(Context context, Uri uri) throws IOException
+    {
+        BitmapFactory.Options bounds = BitmapLoader.readBounds(context, uri);
+        int longEdge = Math.max(bounds.outWidth, bounds.outHeight);
+
+        // Already compressed in the target format and small enough, upload the original bytes,
+        // reporting the size the image is displayed at once its EXIF orientation is applied
+        if (format.getMimeType().equals(bounds.outMimeType) && longEdge <= maxLongEdge)
+        {
+            boolean sideways = BitmapLoader.isStoredSideways(context, uri);
+            return new Payload(uri, null, format, sideways ? bounds.outHeight : bounds.outWidth, sideways ? bounds.outWidth : bounds.outHeight);
+        }
+
+        Bitmap bitmap = BitmapLoader.decodeSampled(context, uri, maxLongEdge, maxLongEdge);
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        bitmap.compress(format.toCompressFormat(), quality, stream);
+        BitmapPool.release(bitmap);
+
+        return new Payload(null, stream.toByteArray(), format, width, height);
+    }
+
+    /**
+     * Encodes a small JPEG thumbnail of the image behind the given Uri.
+     * Must not be called on the main thread.
+     *
+     * @param context The context used to resolve the Uri
+     * @param uri     The Uri of the image
+     * @param maxEdge The maximum long edge of the thumbnail in pixels
+     * @return The encoded thumbnail
+     * @throws IOException If the image cannot be read or decoded
+     */
+    public static byte[] encodeThumbnail(Context context, Uri uri, int maxEdge) throws IOException
+    {
+        Bitmap bitmap = BitmapLoader.decodeSampled(context, uri, maxEdge, maxEdge);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, stream);
+        BitmapPool.release(bitmap);
+
+        return stream.toByteArray();
+    }
+}
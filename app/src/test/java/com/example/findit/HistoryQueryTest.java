@@ -0,0 +1,167 @@
+package com.example.findit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of parsing history searches and of the full-text MATCH expressions built from them.
+ */
+public class HistoryQueryTest {
+    private static final String LOCATION = "location";
+
+    private static Calendar now() {
+        Calendar now = new GregorianCalendar(2024, Calendar.MARCH, 13, 15, 30, 45);
+        now.setFirstDayOfWeek(Calendar.SUNDAY);
+        return now;
+    }
+
+    private static long millis(int year, int month, int day) {
+        return new GregorianCalendar(year, month, day).getTimeInMillis();
+    }
+
+    private static HistoryQuery parse(String text) {
+        return HistoryQuery.parse(text, now());
+    }
+
+    @Test
+    public void parse_wordsAreLowercasedTerms() {
+        HistoryQuery query = parse("  Red   DOG ");
+
+        assertEquals(Arrays.asList("red", "dog"), query.getTerms());
+        assertTrue(query.getLocationTerms().isEmpty());
+        assertTrue(query.hasTerms());
+        assertFalse(query.isEmpty());
+    }
+
+    @Test
+    public void parse_emptyText() {
+        HistoryQuery query = parse("   ");
+
+        assertFalse(query.hasTerms());
+        assertTrue(query.isEmpty());
+        assertEquals("", query.toMatchExpression(LOCATION));
+    }
+
+    @Test
+    public void parse_locationKeywordsStartLocationTerms() {
+        HistoryQuery query = parse("dog near tel aviv");
+
+        assertEquals(Arrays.asList("dog"), query.getTerms());
+        assertEquals(Arrays.asList("tel", "aviv"), query.getLocationTerms());
+    }
+
+    @Test
+    public void parse_punctuationSplitsWords() {
+        HistoryQuery query = parse("coffee-cup at tel-aviv,israel");
+
+        assertEquals(Arrays.asList("coffee", "cup"), query.getTerms());
+        assertEquals(Arrays.asList("tel", "aviv", "israel"), query.getLocationTerms());
+    }
+
+    @Test
+    public void parse_keepsLettersOfOtherScripts() {
+        assertEquals(Arrays.asList("\u05db\u05dc\u05d1", "caf\u00e9"), parse("\u05db\u05dc\u05d1 CAF\u00c9").getTerms());
+    }
+
+    @Test
+    public void parse_today() {
+        HistoryQuery query = parse("today");
+
+        assertFalse(query.hasTerms());
+        assertFalse(query.isEmpty());
+        assertEquals(millis(2024, Calendar.MARCH, 13), query.getFromMillis());
+        assertEquals(millis(2024, Calendar.MARCH, 14), query.getUntilMillis());
+    }
+
+    @Test
+    public void parse_yesterday() {
+        HistoryQuery query = parse("cat yesterday");
+
+        assertEquals(Arrays.asList("cat"), query.getTerms());
+        assertEquals(millis(2024, Calendar.MARCH, 12), query.getFromMillis());
+        assertEquals(millis(2024, Calendar.MARCH, 13), query.getUntilMillis());
+    }
+
+    @Test
+    public void parse_thisWeek() {
+        HistoryQuery query = parse("this week");
+
+        assertEquals(millis(2024, Calendar.MARCH, 10), query.getFromMillis());
+        assertEquals(millis(2024, Calendar.MARCH, 17), query.getUntilMillis());
+    }
+
+    @Test
+    public void parse_lastMonth() {
+        HistoryQuery query = parse("dog last month");
+
+        assertEquals(Arrays.asList("dog"), query.getTerms());
+        assertEquals(millis(2024, Calendar.FEBRUARY, 1), query.getFromMillis());
+        assertEquals(millis(2024, Calendar.MARCH, 1), query.getUntilMillis());
+    }
+
+    @Test
+    public void parse_thisYear() {
+        HistoryQuery query = parse("this year");
+
+        assertEquals(millis(2024, Calendar.JANUARY, 1), query.getFromMillis());
+        assertEquals(millis(2025, Calendar.JANUARY, 1), query.getUntilMillis());
+    }
+
+    @Test
+    public void parse_pastDaysIsOpenEnded() {
+        HistoryQuery query = parse("past 3 days");
+
+        Calendar from = now();
+        from.add(Calendar.DAY_OF_MONTH, -3);
+        assertEquals(from.getTimeInMillis(), query.getFromMillis());
+        assertEquals(Long.MAX_VALUE, query.getUntilMillis());
+        assertFalse(query.hasTerms());
+    }
+
+    @Test
+    public void parse_datePhraseEndsLocationTerms() {
+        HistoryQuery query = parse("near haifa last week cup");
+
+        assertEquals(Arrays.asList("haifa"), query.getLocationTerms());
+        assertEquals(Arrays.asList("cup"), query.getTerms());
+    }
+
+    @Test
+    public void parse_incompleteDatePhrasesAreTerms() {
+        assertEquals(Arrays.asList("last", "dog"), parse("last dog").getTerms());
+        assertEquals(Arrays.asList("last", "3"), parse("last 3").getTerms());
+        assertTrue(parse("last 3").getFromMillis() == 0);
+    }
+
+    @Test
+    public void toMatchExpression_prefixesEveryTerm() {
+        assertEquals("red* dog* location:tel* location:aviv*", parse("red dog near tel aviv").toMatchExpression(LOCATION));
+    }
+
+    @Test
+    public void toMatchExpression_stripsQuotes() {
+        HistoryQuery query = parse("\"red dog\" at 'haifa'");
+
+        assertEquals(Arrays.asList("red", "dog"), query.getTerms());
+        assertEquals("red* dog* location:haifa*", query.toMatchExpression(LOCATION));
+        assertFalse(query.toMatchExpression(LOCATION).contains("\""));
+        assertFalse(query.toMatchExpression(LOCATION).contains("'"));
+    }
+
+    @Test
+    public void toMatchExpression_operatorsAreLowercasedToPlainWords() {
+        // FTS operators are only recognized in upper case, so lowercasing turns them into ordinary terms
+        assertEquals("cat* or* dog* and* not* bird*", parse("cat OR dog AND NOT bird").toMatchExpression(LOCATION));
+    }
+
+    @Test
+    public void toMatchExpression_stripsOperatorCharacters() {
+        assertEquals("dog* cat* label* x*", parse("-dog +cat* label:x (").toMatchExpression(LOCATION));
+        assertEquals("", parse("\"* - ( ) :\"").toMatchExpression(LOCATION));
+    }
+}
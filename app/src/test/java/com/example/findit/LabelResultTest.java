@@ -0,0 +1,139 @@
+package com.example.findit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the compact form of LabelResult and of picking the top labels.
+ */
+public class LabelResultTest {
+    @Test
+    public void encode_compactForm() {
+        String encoded = LabelResult.encode(Arrays.asList(new LabelResult("Dog", 0.93f), new LabelResult("Cat", 0.41f)));
+
+        assertEquals("Dog:0.93;Cat:0.41", encoded);
+    }
+
+    @Test
+    public void encode_empty() {
+        assertEquals("", LabelResult.encode(Collections.<LabelResult>emptyList()));
+    }
+
+    @Test
+    public void encode_roundsToTwoDecimals() {
+        assertEquals("Dog:0.94;Cat:1.00", LabelResult.encode(Arrays.asList(new LabelResult("Dog", 0.9351f), new LabelResult("Cat", 0.999f))));
+    }
+
+    @Test
+    public void encode_ignoresDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            // A decimal comma would be split off as a damaged entry on decode
+            Locale.setDefault(Locale.GERMANY);
+            assertEquals("Dog:0.93", LabelResult.encode(Collections.singletonList(new LabelResult("Dog", 0.93f))));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void encode_replacesSeparatorsInText() {
+        String encoded = LabelResult.encode(Arrays.asList(new LabelResult("Cup;Mug", 0.8f), new LabelResult("Time:Out", 0.5f)));
+
+        assertEquals("Cup Mug:0.80;Time Out:0.50", encoded);
+        List<LabelResult> decoded = LabelResult.decode(encoded);
+        assertEquals(2, decoded.size());
+        assertEquals("Cup Mug", decoded.get(0).getText());
+        assertEquals("Time Out", decoded.get(1).getText());
+    }
+
+    @Test
+    public void decode_roundTrip() {
+        List<LabelResult> decoded = LabelResult.decode(LabelResult.encode(Arrays.asList(
+                new LabelResult("Hot dog", 0.75f), new LabelResult("Food", 0.5f))));
+
+        assertEquals(2, decoded.size());
+        assertEquals("Hot dog", decoded.get(0).getText());
+        assertEquals(0.75f, decoded.get(0).getConfidence(), 1e-6);
+        assertEquals("Food", decoded.get(1).getText());
+        assertEquals(0.5f, decoded.get(1).getConfidence(), 1e-6);
+    }
+
+    @Test
+    public void decode_nullOrEmpty() {
+        assertTrue(LabelResult.decode(null).isEmpty());
+        assertTrue(LabelResult.decode("").isEmpty());
+    }
+
+    @Test
+    public void decode_skipsDamagedEntries() {
+        List<LabelResult> decoded = LabelResult.decode("Dog:0.93;NoConfidence;:0.5;Cat:abc;;Cup:0,5;Plant:0.40");
+
+        assertEquals(2, decoded.size());
+        assertEquals("Dog", decoded.get(0).getText());
+        assertEquals("Plant", decoded.get(1).getText());
+    }
+
+    @Test
+    public void decode_legacyLabelWithoutConfidence() {
+        // Captures from before confidences were kept hold only the best label
+        assertTrue(LabelResult.decode("Dog").isEmpty());
+    }
+
+    @Test
+    public void textsOf_joinsTexts() {
+        assertEquals("Dog Cat", LabelResult.textsOf("Dog:0.93;Cat:0.41"));
+        assertEquals("Dog", LabelResult.textsOf("Dog:0.93;broken"));
+        assertEquals("", LabelResult.textsOf(null));
+    }
+
+    @Test
+    public void top_sortsByConfidence() {
+        List<LabelResult> top = LabelResult.top(Arrays.asList(
+                new LabelResult("Cat", 0.41f), new LabelResult("Dog", 0.93f), new LabelResult("Cup", 0.65f)), 5, 0f);
+
+        assertEquals(3, top.size());
+        assertEquals("Dog", top.get(0).getText());
+        assertEquals("Cup", top.get(1).getText());
+        assertEquals("Cat", top.get(2).getText());
+    }
+
+    @Test
+    public void top_appliesThreshold() {
+        List<LabelResult> top = LabelResult.top(Arrays.asList(
+                new LabelResult("Cat", 0.29f), new LabelResult("Dog", 0.3f), new LabelResult("Cup", 0.1f)), 5, 0.3f);
+
+        assertEquals(1, top.size());
+        assertEquals("Dog", top.get(0).getText());
+    }
+
+    @Test
+    public void top_truncatesToMaxCount() {
+        List<LabelResult> top = LabelResult.top(Arrays.asList(
+                new LabelResult("A", 0.5f), new LabelResult("B", 0.9f), new LabelResult("C", 0.7f), new LabelResult("D", 0.8f)), 2, 0f);
+
+        assertEquals(2, top.size());
+        assertEquals("B", top.get(0).getText());
+        assertEquals("D", top.get(1).getText());
+    }
+
+    @Test
+    public void top_nothingAboveThreshold() {
+        assertTrue(LabelResult.top(Collections.singletonList(new LabelResult("Dog", 0.2f)), 5, 0.5f).isEmpty());
+        assertTrue(LabelResult.top(Collections.<LabelResult>emptyList(), 5, 0f).isEmpty());
+    }
+
+    @Test
+    public void top_leavesInputUntouched() {
+        List<LabelResult> input = Arrays.asList(new LabelResult("Cat", 0.4f), new LabelResult("Dog", 0.9f));
+        LabelResult.top(input, 1, 0f);
+
+        assertEquals("Cat", input.get(0).getText());
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.findit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the JSON form of LabeledRegion and of merging the labels of several regions.
+ */
+public class LabeledRegionTest {
+    private static LabeledRegion region(float left, float top, float right, float bottom, LabelResult... labels) {
+        return new LabeledRegion(left, top, right, bottom, Arrays.asList(labels));
+    }
+
+    @Test
+    public void encode_decode_roundTrip() {
+        List<LabeledRegion> decoded = LabeledRegion.decode(LabeledRegion.encode(Arrays.asList(
+                region(0.1f, 0.2f, 0.5f, 0.6f, new LabelResult("Cup", 0.91f), new LabelResult("Mug", 0.5f)),
+                region(0f, 0f, 1f, 1f, new LabelResult("Table", 0.7f)))));
+
+        assertEquals(2, decoded.size());
+        LabeledRegion first = decoded.get(0);
+        assertEquals(0.1f, first.getLeft(), 1e-6);
+        assertEquals(0.2f, first.getTop(), 1e-6);
+        assertEquals(0.5f, first.getRight(), 1e-6);
+        assertEquals(0.6f, first.getBottom(), 1e-6);
+        assertEquals(2, first.getLabels().size());
+        assertEquals("Cup", first.getLabels().get(0).getText());
+        assertEquals(0.91f, first.getLabels().get(0).getConfidence(), 1e-6);
+        assertEquals("Table", decoded.get(1).getLabels().get(0).getText());
+    }
+
+    @Test
+    public void encode_roundsBoxToThreeDecimals() {
+        String encoded = LabeledRegion.encode(Collections.singletonList(
+                region(0.123456f, 0f, 1f, 1f, new LabelResult("Cup", 0.9f))));
+
+        assertTrue(encoded, encoded.contains("0.123"));
+        assertFalse(encoded, encoded.contains("0.1234"));
+    }
+
+    @Test
+    public void encode_emptyList() {
+        assertEquals("[]", LabeledRegion.encode(Collections.<LabeledRegion>emptyList()));
+        assertTrue(LabeledRegion.decode("[]").isEmpty());
+    }
+
+    @Test
+    public void decode_nullOrEmpty() {
+        assertTrue(LabeledRegion.decode(null).isEmpty());
+        assertTrue(LabeledRegion.decode("").isEmpty());
+    }
+
+    @Test
+    public void decode_notJson() {
+        assertTrue(LabeledRegion.decode("Cup:0.91").isEmpty());
+        assertTrue(LabeledRegion.decode("[{\"box\":").isEmpty());
+    }
+
+    @Test
+    public void decode_skipsDamagedEntries() {
+        List<LabeledRegion> decoded = LabeledRegion.decode("["
+                + "{\"box\":[0.1,0.2],\"labels\":\"Short:0.50\"},"
+                + "{\"labels\":\"NoBox:0.50\"},"
+                + "42,"
+                + "{\"box\":[0.1,0.2,0.3,0.4],\"labels\":\"Cup:0.91\"}"
+                + "]");
+
+        assertEquals(1, decoded.size());
+        assertEquals("Cup", decoded.get(0).getLabels().get(0).getText());
+    }
+
+    @Test
+    public void decode_missingLabels() {
+        List<LabeledRegion> decoded = LabeledRegion.decode("[{\"box\":[0.1,0.2,0.3,0.4]}]");
+
+        assertEquals(1, decoded.size());
+        assertTrue(decoded.get(0).getLabels().isEmpty());
+    }
+
+    @Test
+    public void textsOf_joinsAllRegions() {
+        String encoded = LabeledRegion.encode(Arrays.asList(
+                region(0f, 0f, 0.5f, 0.5f, new LabelResult("Cup", 0.9f), new LabelResult("Mug", 0.6f)),
+                region(0.5f, 0.5f, 1f, 1f, new LabelResult("Table", 0.7f))));
+
+        assertEquals("Cup Mug Table", LabeledRegion.textsOf(encoded));
+        assertEquals("", LabeledRegion.textsOf(null));
+    }
+
+    @Test
+    public void mergeLabels_keepsHighestConfidence() {
+        List<LabelResult> merged = LabeledRegion.mergeLabels(Arrays.asList(
+                region(0f, 0f, 0.5f, 0.5f, new LabelResult("Cup", 0.6f), new LabelResult("Table", 0.4f)),
+                region(0.5f, 0.5f, 1f, 1f, new LabelResult("Cup", 0.9f), new LabelResult("Plant", 0.7f))));
+
+        assertEquals(3, merged.size());
+        for (LabelResult label : merged) {
+            if (label.getText().equals("Cup"))
+                assertEquals(0.9f, label.getConfidence(), 1e-6);
+        }
+    }
+
+    @Test
+    public void mergeLabels_keepsFirstSeenOrder() {
+        List<LabelResult> merged = LabeledRegion.mergeLabels(Arrays.asList(
+                region(0f, 0f, 0.5f, 0.5f, new LabelResult("Cup", 0.6f)),
+                region(0.5f, 0.5f, 1f, 1f, new LabelResult("Plant", 0.7f), new LabelResult("Cup", 0.9f))));
+
+        assertEquals("Cup", merged.get(0).getText());
+        assertEquals("Plant", merged.get(1).getText());
+    }
+
+    @Test
+    public void mergeLabels_noRegions() {
+        assertTrue(LabeledRegion.mergeLabels(Collections.<LabeledRegion>emptyList()).isEmpty());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.findit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the LabelingPipeline, driven by a FakeLabelingEngine returning fixed labels.
+ */
+public class LabelingPipelineTest {
+    private static List<LabelResult> labelWith(List<LabelResult> engineLabels, int maxLabels, float minConfidence) throws Exception {
+        return LabelingPipeline.labelImage(new FakeLabelingEngine(engineLabels), null, maxLabels, minConfidence);
+    }
+
+    @Test
+    public void labelImage_keepsMostConfidentFirst() throws Exception {
+        List<LabelResult> labels = labelWith(Arrays.asList(
+                new LabelResult("Cat", 0.41f),
+                new LabelResult("Dog", 0.93f),
+                new LabelResult("Cup", 0.65f)), 5, 0.3f);
+
+        assertEquals(3, labels.size());
+        assertEquals("Dog", labels.get(0).getText());
+        assertEquals("Cup", labels.get(1).getText());
+        assertEquals("Cat", labels.get(2).getText());
+    }
+
+    @Test
+    public void labelImage_dropsLabelsBelowThreshold() throws Exception {
+        List<LabelResult> labels = labelWith(Arrays.asList(
+                new LabelResult("Dog", 0.93f),
+                new LabelResult("Cat", 0.2f)), 5, 0.3f);
+
+        assertEquals(1, labels.size());
+        assertEquals("Dog", labels.get(0).getText());
+    }
+
+    @Test
+    public void labelImage_truncatesToMaxLabels() throws Exception {
+        List<LabelResult> labels = labelWith(Arrays.asList(
+                new LabelResult("Dog", 0.93f),
+                new LabelResult("Cat", 0.8f),
+                new LabelResult("Cup", 0.7f)), 2, 0f);
+
+        assertEquals(2, labels.size());
+        assertEquals("Cat", labels.get(1).getText());
+    }
+
+    @Test
+    public void labelImage_keepsBestLabelBelowThreshold() throws Exception {
+        List<LabelResult> labels = labelWith(Arrays.asList(
+                new LabelResult("Cat", 0.1f),
+                new LabelResult("Dog", 0.2f)), 5, 0.5f);
+
+        assertEquals(1, labels.size());
+        assertEquals("Dog", labels.get(0).getText());
+    }
+
+    @Test
+    public void labelImage_emptyWhenEngineFindsNothing() throws Exception {
+        assertTrue(labelWith(Collections.<LabelResult>emptyList(), 5, 0.3f).isEmpty());
+    }
+
+    @Test
+    public void labelImage_keepsAtLeastOneLabel() throws Exception {
+        List<LabelResult> labels = labelWith(Collections.singletonList(new LabelResult("Dog", 0.93f)), 0, 0.3f);
+
+        assertEquals(1, labels.size());
+    }
+
+    @Test
+    public void selectLabels_encodedLabelsRoundTrip() {
+        List<LabelResult> labels = LabelingPipeline.selectLabels(Arrays.asList(
+                new LabelResult("Dog", 0.93f),
+                new LabelResult("Cat", 0.41f)), 5, 0.3f);
+
+        assertEquals("Dog:0.93;Cat:0.41", LabelResult.encode(labels));
+    }
+}